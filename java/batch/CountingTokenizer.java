@@ -0,0 +1,46 @@
+package batch;
+
+import java.io.Reader;
+
+import project1.enums.TokenType;
+import project1.handlers.TokenizerNoComments;
+
+/**
+ * A tokenizer without comments that counts the tokens it parses, and the invalid ones among them.
+ */
+class CountingTokenizer extends TokenizerNoComments {
+
+    private long tokens = 0;
+    private long errors = 0;
+
+    CountingTokenizer(Reader reader) {
+        super(reader);
+    }
+
+    @Override
+    public TokenType nextSpan() {
+        TokenType type = super.nextSpan();
+        if (type != TokenType.EOF)
+            ++tokens;
+        if (type == TokenType.ERROR)
+            ++errors;
+        return type;
+    }
+
+    /**
+     * Getter for the number of tokens parsed.
+     * @return the number of tokens parsed, not counting comments and EOF
+     */
+    long getTokenCount() {
+        return tokens;
+    }
+
+    /**
+     * Getter for the number of invalid tokens parsed.
+     * @return the number of lexical errors
+     */
+    long getErrorCount() {
+        return errors;
+    }
+
+}
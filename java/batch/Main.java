@@ -0,0 +1,327 @@
+package batch;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Driver program for nightly runs over many programs: tokenizes or compiles every file matched by
+ * the given globs or directories in parallel, writes one output file per program, like
+ * project1.Main and project2.Main do for their data files, and prints a summary with the
+ * throughput of every worker. Directories are searched recursively for *.in files.
+ * Usage: batch.Main [options] (glob | directory)...
+ *   --tokenize      write the tokens of every program instead of compiling it
+ *   --workers N     the number of parallel workers, the number of processors by default
+ *   --out DIR       where the outputs go, keeping the paths relative to the searched directory;
+ *                   next to every program by default
+ *   --suffix S      replaces the extension of a program for its output, .out by default
+ *   --discard       do not write outputs, e.g. to measure the throughput
+ * Exits with status 1 if a file could not be read or written, or made the grammar fail with an
+ * exception instead of a compile error, and 2 on invalid arguments. The other files are still
+ * processed and counted in the summary.
+ */
+public class Main {
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 << 10;
+    private static final String USAGE = "usage: batch.Main [--tokenize] [--workers N] [--out DIR]"
+        + " [--suffix S] [--discard] (glob | directory)...";
+
+    private boolean tokenize = false;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private Path outputDirectory = null;
+    private String suffix = ".out";
+    private boolean discard = false;
+
+    // every file to process, with the directory its output path is relative to
+    private final Map<Path, Path> files = new LinkedHashMap<>();
+
+    /**
+     * Main driver method.
+     */
+    public static void main(String[] args) throws IOException {
+        Main main = new Main();
+        try {
+            main.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (!main.run(System.out))
+            System.exit(1);
+    }
+
+    /**
+     * Parses the options and collects the files matched by the other arguments.
+     * @param args the command line arguments
+     * @throws IOException when a directory cannot be searched
+     */
+    private void parseArguments(String[] args) throws IOException {
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--tokenize":
+                    tokenize = true;
+                    break;
+                case "--workers":
+                    workers = Integer.parseInt(value(args, ++i));
+                    if (workers < 1)
+                        throw new IllegalArgumentException("workers must be positive: " + workers);
+                    break;
+                case "--out":
+                    outputDirectory = Paths.get(value(args, ++i));
+                    break;
+                case "--suffix":
+                    suffix = value(args, ++i);
+                    break;
+                case "--discard":
+                    discard = true;
+                    break;
+                default:
+                    if (args[i].startsWith("--"))
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                    patterns.add(args[i]);
+            }
+        }
+        if (patterns.isEmpty())
+            throw new IllegalArgumentException("no glob or directory given");
+        for (String pattern : patterns)
+            collect(pattern);
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length)
+            throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        return args[i];
+    }
+
+    /**
+     * Adds the files matched by a glob, the *.in files under a directory, or a single file.
+     * @param pattern the glob, directory or file
+     * @throws IOException when a directory cannot be searched
+     */
+    private void collect(String pattern) throws IOException {
+        int wildcard = 0;
+        while (wildcard < pattern.length() && "*?[{".indexOf(pattern.charAt(wildcard)) < 0)
+            ++wildcard;
+        if (wildcard == pattern.length()) {
+            Path path = Paths.get(pattern);
+            if (Files.isDirectory(path)) {
+                addAll(path, FileSystems.getDefault().getPathMatcher("glob:**.in"));
+            } else if (Files.isRegularFile(path)) {
+                Path parent = path.getParent();
+                files.putIfAbsent(path, parent != null ? parent : Paths.get(""));
+            } else {
+                throw new IllegalArgumentException("no such file or directory: " + pattern);
+            }
+            return;
+        }
+        // search from the directories before the first wildcard
+        Path parent = Paths.get(pattern.substring(0, wildcard) + "x").getParent();
+        Path base = parent != null ? parent : Paths.get("");
+        int before = files.size();
+        addAll(base, FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        if (files.size() == before)
+            System.err.println("no files match " + pattern);
+    }
+
+    private void addAll(Path base, PathMatcher matcher) throws IOException {
+        if (!Files.isDirectory(base))
+            return;
+        try (Stream<Path> walk = Files.walk(base)) {
+            for (Path file : walk.filter(matcher::matches).filter(Files::isRegularFile).sorted()
+                                 .collect(Collectors.toList()))
+                files.putIfAbsent(file, base);
+        }
+    }
+
+    /**
+     * Processes all collected files on a pool of workers and prints the summary.
+     * @param summary the stream where the summary goes
+     * @return true if every file was read, processed and written
+     */
+    private boolean run(PrintStream summary) {
+        List<Callable<FileResult>> tasks = new ArrayList<>(files.size());
+        for (Map.Entry<Path, Path> file : files.entrySet())
+            tasks.add(() -> process(file.getKey(), file.getValue()));
+
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        List<FileResult> results = new ArrayList<>(files.size());
+        long start = System.nanoTime();
+        try {
+            for (Future<FileResult> result : pool.invokeAll(tasks))
+                results.add(result.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while processing files", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to process a file", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        long wallTime = System.nanoTime() - start;
+
+        // totals and workers
+        FileResult total = new FileResult(null, 0);
+        Map<Integer, FileResult> byWorker = new TreeMap<>();
+        int failed = 0;
+        for (FileResult result : results) {
+            if (result.failure != null) {
+                System.err.println("failed " + result.file + ": " + result.failure);
+                ++failed;
+            }
+            total.add(result);
+            byWorker.computeIfAbsent(result.worker, worker -> new FileResult(null, worker))
+                    .add(result);
+        }
+
+        summary.printf("files        %d (%d failed)%n", results.size(), failed);
+        summary.printf("bytes        %d%n", total.bytes);
+        summary.printf("tokens       %d%n", total.tokens);
+        if (!tokenize)
+            summary.printf("statements   %d%n", total.statements);
+        summary.printf("errors       %d (%s)%n", total.errors,
+                       tokenize ? "invalid tokens" : "statements with compile errors");
+        summary.printf("wall time    %.3f s, %.2f MB/s, %.0f files/s, %d workers%n",
+                       wallTime / 1e9, megabytesPerSecond(total.bytes, wallTime),
+                       results.size() / Math.max(wallTime / 1e9, 1e-9), workers);
+        for (FileResult worker : byWorker.values())
+            summary.printf("worker %-5d %d files, %d bytes, %.3f s busy, %.2f MB/s%n",
+                           worker.worker, worker.files, worker.bytes, worker.nanos / 1e9,
+                           megabytesPerSecond(worker.bytes, worker.nanos));
+        return failed == 0;
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return bytes / 1e6 / Math.max(nanos / 1e9, 1e-9);
+    }
+
+    /**
+     * Tokenizes or compiles a single file, streaming it from a channel into its output.
+     * @param file the program to process
+     * @param base the directory the output path is relative to
+     * @return the counts of the file
+     */
+    private FileResult process(Path file, Path base) {
+        Thread thread = Thread.currentThread();
+        FileResult result = new FileResult(file, thread instanceof ForkJoinWorkerThread
+            ? ((ForkJoinWorkerThread) thread).getPoolIndex() : 0);
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             OutputStream output = openOutput(file, base)) {
+            result.bytes = channel.size();
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CountingTokenizer tokenizer =
+                new CountingTokenizer(Channels.newReader(channel, decoder, -1));
+            if (tokenize) {
+                PrintWriter writer =
+                    new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                project1.Main.tokenize(tokenizer, writer);
+                writer.flush();
+                if (writer.checkError())
+                    throw new IOException("could not write the output");
+                result.errors = tokenizer.getErrorCount();
+            } else {
+                PrintStream debugStream = new PrintStream(output, false, StandardCharsets.UTF_8);
+                project2.Main main = new project2.Main(tokenizer, debugStream, null);
+                debugStream.flush();
+                if (debugStream.checkError())
+                    throw new IOException("could not write the output");
+                result.statements = main.getStatementCount();
+                result.errors = main.getErrorCount();
+            }
+            result.tokens = tokenizer.getTokenCount();
+        } catch (IOException | RuntimeException | StackOverflowError e) {
+            // a failure of the grammar only fails its file, like in BatchCompiler
+            result.failure = e;
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Opens the buffered output of a program, creating its directory if needed.
+     * @param file the program
+     * @param base the directory the output path is relative to
+     * @return the output stream, which discards everything when outputs are discarded
+     * @throws IOException when the output cannot be created
+     */
+    private OutputStream openOutput(Path file, Path base) throws IOException {
+        if (discard)
+            return OutputStream.nullOutputStream();
+        Path directory = outputDirectory != null
+            ? outputDirectory.resolve(base.relativize(file)).getParent() : file.getParent();
+        String name = file.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        Path output = Paths.get(extension > 0 ? name.substring(0, extension) + suffix
+                                              : name + suffix);
+        if (directory != null) {
+            Files.createDirectories(directory);
+            output = directory.resolve(output);
+        }
+        if (Files.exists(output) && Files.isSameFile(output, file))
+            throw new IOException("the output would overwrite the program");
+        return new BufferedOutputStream(Files.newOutputStream(output), OUTPUT_BUFFER_SIZE);
+    }
+
+    /**
+     * The counts of a processed file, or the sums of the counts of many files.
+     */
+    private static class FileResult {
+
+        final Path file;
+        final int worker;
+        long files = 0;
+        long bytes = 0;
+        long tokens = 0;
+        long statements = 0;
+        long errors = 0;
+        long nanos = 0;
+        Throwable failure = null;
+
+        FileResult(Path file, int worker) {
+            this.file = file;
+            this.worker = worker;
+            if (file != null)
+                this.files = 1;
+        }
+
+        void add(FileResult other) {
+            files += other.files;
+            bytes += other.bytes;
+            tokens += other.tokens;
+            statements += other.statements;
+            errors += other.errors;
+            nanos += other.nanos;
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * A small benchmark harness: runs a workload for a number of warmup iterations, then measures
+ * the time and the heap allocation of a number of timed iterations on the current thread. The
+ * project is built from its sources without a build tool, so this stands in for JMH: it does not
+ * fork a JVM per benchmark, and it keeps results alive through a volatile field instead of a
+ * Blackhole, so compare numbers from the same run rather than across runs.
+ */
+public class Benchmark {
+
+    /**
+     * A workload to measure.
+     */
+    public interface Workload {
+        /**
+         * Runs the workload once.
+         * @return the number of operations performed, such as tokens read
+         */
+        long run() throws Exception;
+    }
+
+    // keeps results of workloads alive, so that the JIT does not remove them
+    private static volatile long sink;
+
+    private final String name;
+    private final int warmupIterations;
+    private final int iterations;
+    private final long bytesPerRun;
+
+    /**
+     * Creates a benchmark.
+     * @param name the name printed with the results
+     * @param warmupIterations the number of runs before measuring
+     * @param iterations the number of measured runs
+     * @param bytesPerRun the number of input bytes processed per run, 0 if not applicable
+     */
+    public Benchmark(String name, int warmupIterations, int iterations, long bytesPerRun) {
+        this.name = name;
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.bytesPerRun = bytesPerRun;
+    }
+
+    /**
+     * Runs the workload and prints the median time per run, the operations and bytes per second
+     * at the median, and the bytes allocated per operation.
+     * @param workload the workload to measure
+     * @throws Exception when the workload fails
+     */
+    public void run(Workload workload) throws Exception {
+        for (int i = 0; i < warmupIterations; ++i)
+            sink += workload.run();
+
+        long[] times = new long[iterations];
+        long operations = 0;
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < iterations; ++i) {
+            long start = System.nanoTime();
+            long ops = workload.run();
+            times[i] = System.nanoTime() - start;
+            operations += ops;
+            sink += ops;
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        Arrays.sort(times);
+        long median = times[times.length / 2];
+        double seconds = median / 1e9;
+        double opsPerRun = (double) operations / iterations;
+        StringBuilder line = new StringBuilder();
+        line.append(String.format("%-40s %12.3f ms/run (min %.3f, max %.3f)", name, median / 1e6,
+            times[0] / 1e6, times[times.length - 1] / 1e6));
+        line.append(String.format(" %14.0f ops/s", opsPerRun / seconds));
+        if (bytesPerRun > 0)
+            line.append(String.format(" %10.2f MB/s", bytesPerRun / seconds / (1 << 20)));
+        if (allocatedBefore >= 0 && operations > 0)
+            line.append(String.format(" %10.2f B/op", (double) allocated / operations));
+        System.out.println(line);
+    }
+
+    /**
+     * Gets the number of bytes allocated so far by the current thread.
+     * @return the number of bytes, -1 if the JVM does not support it
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+        return -1;
+    }
+
+}
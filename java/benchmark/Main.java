@@ -0,0 +1,267 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import project1.enums.TokenType;
+import project1.handlers.ParallelTokenizer;
+import project1.handlers.RegexTokenizerHandler;
+import project1.handlers.Tokenizer;
+import project1.handlers.TokenizerHandler;
+import project2.CompilerGrammarWithDebug;
+import project2.compiler.BatchCompiler;
+import project2.compiler.Bytecode;
+import project2.compiler.CompileException;
+import project2.compiler.CompilerGrammar;
+import project2.compiler.Environment;
+import project2.compiler.HamtEnvironment;
+import project2.compiler.Optimizer;
+import project2.compiler.ProgramCache;
+import project2.compiler.SlotEnvironment;
+import project2.compiler.ast.Program;
+import project2.compiler.output.DiscardSink;
+
+/**
+ * Driver program for the benchmarks of the lexer and interpreter hot paths: tokenizing, alone and
+ * in parallel chunks, building the tokenizer tables, compiling the data programs, running parsed
+ * programs on each execution tier, looking up variables in environments of different depths,
+ * and compiling batches of programs concurrently. Run from the project root, like the other
+ * drivers.
+ * Usage: benchmark.Main [synthetic program size, e.g. 1M] [iterations]
+ */
+public class Main {
+
+    // programs larger than this are streamed from a file instead of kept in memory
+    private static final long IN_MEMORY_LIMIT = 64 << 20;
+
+    public static void main(String[] args) throws Exception {
+
+        long syntheticSize = ProgramGenerator.parseSize(args.length > 0 ? args[0] : "1M");
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int warmup = iterations;
+
+        List<Path> programs = new ArrayList<>();
+        for (String dir : new String[]{"java/project1/data", "java/project2/data"})
+            try (Stream<Path> files = Files.list(Paths.get(dir))) {
+                files.filter(path -> path.toString().endsWith(".in")).sorted().forEach(programs::add);
+            }
+
+        System.out.println("Tokenizer.nextToken");
+        for (Path path : programs) {
+            String program = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            new Benchmark(nameOf(path), warmup * 100, iterations * 100, program.length())
+                .run(() -> tokenize(new Tokenizer(program)));
+        }
+        if (syntheticSize <= IN_MEMORY_LIMIT) {
+            String program = new ProgramGenerator(130, 64).generate((int) syntheticSize);
+            new Benchmark("synthetic " + syntheticSize + " chars", warmup, iterations,
+                          program.length()).run(() -> tokenize(new Tokenizer(program)));
+        } else {
+            File file = File.createTempFile("synthetic", ".in");
+            file.deleteOnExit();
+            try (Writer out = new FileWriter(file)) {
+                new ProgramGenerator(130, 64).generate(syntheticSize, out);
+            }
+            new Benchmark("synthetic " + syntheticSize + " chars (streamed)", 1, iterations,
+                          file.length()).run(() -> {
+                try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                    return tokenize(new Tokenizer(reader));
+                }
+            });
+        }
+
+        System.out.println();
+        System.out.println("ParallelTokenizer.tokenize");
+        if (syntheticSize <= IN_MEMORY_LIMIT) {
+            String program = new ProgramGenerator(130, 64).generate((int) syntheticSize);
+            char[] buffer = program.toCharArray();
+            // many small chunks catch work that grows with the offset where a chunk starts
+            for (int chunkSize : new int[]{ParallelTokenizer.DEFAULT_CHUNK_SIZE, 32 << 10}) {
+                ParallelTokenizer tokenizer = new ParallelTokenizer(
+                    Tokenizer.getHandler(), ForkJoinPool.commonPool(), chunkSize, false);
+                new Benchmark("synthetic " + syntheticSize + " chars, " + chunkSize + " per chunk",
+                              warmup, iterations, buffer.length)
+                    .run(() -> tokenizer.tokenize(buffer, buffer.length).size());
+            }
+        }
+
+        System.out.println();
+        System.out.println("TokenizerHandler construction");
+        new Benchmark("build from DFA graph", warmup, iterations, 0).run(() -> {
+            Tokenizer.buildHandler();
+            return 1;
+        });
+        ByteArrayOutputStream tables = new ByteArrayOutputStream();
+        Tokenizer.getHandler().writeTables(tables);
+        byte[] tableBytes = tables.toByteArray();
+        new Benchmark("load from tables", warmup, iterations, tableBytes.length).run(() -> {
+            new TokenizerHandler(new ByteArrayInputStream(tableBytes));
+            return 1;
+        });
+        RegexTokenizerHandler.generate(RegexTokenizerHandler.LEXICAL_RULES);
+        new Benchmark("generate from cached rules", warmup, iterations, 0).run(() -> {
+            RegexTokenizerHandler.generate(RegexTokenizerHandler.LEXICAL_RULES);
+            return 1;
+        });
+
+        System.out.println();
+        System.out.println("CompilerGrammar.compile");
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        for (Path path : programs) {
+            String program = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            new Benchmark(nameOf(path), warmup * 100, iterations * 100, program.length())
+                .run(() -> compile(program, discard));
+        }
+
+        System.out.println();
+        System.out.println("CompilerGrammar.execute (parsed once)");
+        List<String> executed = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (Path path : programs) {
+            executed.add(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+            names.add(nameOf(path));
+        }
+        executed.add(new ProgramGenerator(130, 64, false).generate(2 << 10));
+        names.add("synthetic numeric 2K chars");
+        ProgramCache cache = new ProgramCache(executed.size(), 1);
+        for (int i = 0; i < executed.size(); ++i) {
+            String program = executed.get(i);
+            Program parsed;
+            try {
+                parsed = new CompilerGrammar().parse(program);
+            } catch (CompileException e) {
+                continue; // only programs without syntax errors can be parsed
+            }
+            Bytecode bytecode = Bytecode.compile(parsed);
+            new Benchmark(names.get(i) + " tree", warmup * 100, iterations * 100, 0)
+                .run(() -> execute(grammar -> grammar.execute(parsed)));
+            new Benchmark(names.get(i) + " bytecode", warmup * 100, iterations * 100, 0)
+                .run(() -> execute(grammar -> grammar.execute(bytecode)));
+            Program optimized = Optimizer.optimize(parsed);
+            if (optimized != parsed) {
+                Bytecode optimizedBytecode = Bytecode.compile(optimized);
+                new Benchmark(names.get(i) + " optimized bytecode", warmup * 100,
+                              iterations * 100, 0)
+                    .run(() -> execute(grammar -> grammar.execute(optimizedBytecode)));
+            }
+            Program withoutDeadAssignments = Optimizer.optimize(parsed, false);
+            if (withoutDeadAssignments != optimized) {
+                Bytecode prunedBytecode = Bytecode.compile(withoutDeadAssignments);
+                new Benchmark(names.get(i) + " optimized bytecode without dead assignments",
+                              warmup * 100, iterations * 100, 0)
+                    .run(() -> execute(grammar -> grammar.execute(prunedBytecode)));
+            }
+            execute(grammar -> cache.execute(grammar, program));
+            if (cache.isCompiled(program))
+                new Benchmark(names.get(i) + " jit", warmup * 100, iterations * 100, 0)
+                    .run(() -> execute(grammar -> cache.execute(grammar, program)));
+        }
+
+        System.out.println();
+        System.out.println("Environment.getValue");
+        for (Environment empty : new Environment[]{
+                new Environment(), new SlotEnvironment(), new HamtEnvironment()}) {
+            String kind = empty.getClass().getSimpleName();
+            for (int depth = 1; depth <= 4096; depth *= 16) {
+                Environment environment = empty;
+                for (int i = 0; i < depth; ++i)
+                    environment = environment.define("v" + i, (double) i);
+                Environment env = environment;
+                int lookups = Math.max(16, (1 << 20) / depth);
+                new Benchmark(kind + " depth " + depth + " (first defined)", warmup, iterations, 0)
+                    .run(() -> {
+                        for (int i = 0; i < lookups; ++i)
+                            if (env.getValue("v0") == null)
+                                return 0;
+                        return lookups;
+                    });
+            }
+        }
+
+        System.out.println();
+        System.out.println("BatchCompiler.compile (1024 programs of 1K chars, allocation of the"
+                           + " calling thread only)");
+        List<String> batch = new ArrayList<>();
+        for (int i = 0; i < 1024; ++i)
+            batch.add(new ProgramGenerator(i, 16).generate(1 << 10));
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int parallelism : processors > 1 ? new int[]{1, processors} : new int[]{1}) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            BatchCompiler compiler = new BatchCompiler(CompilerGrammar::new, pool, null);
+            new Benchmark(parallelism + " threads", warmup, iterations, 0)
+                .run(() -> compiler.compile(batch).size());
+            pool.shutdown();
+        }
+    }
+
+    private static String nameOf(Path program) {
+        return program.getParent().getParent().getFileName() + "/" + program.getFileName();
+    }
+
+    private interface Execution {
+        void run(CompilerGrammar grammar) throws CompileException;
+    }
+
+    /**
+     * Runs a parsed program with a fresh grammar that discards its output, ignoring errors while
+     * running.
+     * @param execution the execution to run
+     * @return 1, for one run
+     */
+    private static long execute(Execution execution) {
+        CompilerGrammar grammar = new CompilerGrammar();
+        grammar.setOutputSink(DiscardSink.INSTANCE);
+        try {
+            execution.run(grammar);
+        } catch (CompileException | RuntimeException ignore) {
+            // errors are part of the sample programs
+        }
+        return 1;
+    }
+
+    /**
+     * Reads all tokens of a tokenizer.
+     * @param tokenizer the tokenizer to read
+     * @return the number of tokens read
+     */
+    private static long tokenize(Tokenizer tokenizer) {
+        long tokens = 1;
+        while (tokenizer.nextToken().getTokenType() != TokenType.EOF)
+            ++tokens;
+        return tokens;
+    }
+
+    /**
+     * Compiles a program with a fresh debug compiler that writes to a given stream, ignoring
+     * compile errors like project2.Main does.
+     * @param program the program to compile
+     * @param out the stream to write the debug output to
+     * @return 1, for one compiled program
+     */
+    private static long compile(String program, PrintStream out) throws IOException {
+        CompilerGrammarWithDebug compiler = new CompilerGrammarWithDebug(out);
+        try {
+            compiler.compile(program);
+        } catch (CompileException | RuntimeException ignore) {
+            // errors are part of the sample programs
+        }
+        return 1;
+    }
+
+}
@@ -0,0 +1,182 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates synthetic programs for the project 2 grammar, with assignments, PRINT and IF
+ * statements, nested expressions, strings and comments. Programs are generated from a fixed
+ * seed, so the same size always gives the same program. Generated programs compile without
+ * errors, and can be generated without strings to only use numbers.
+ */
+public class ProgramGenerator {
+
+    private static final String[] RELATIONS = {"<", "<=", ">", ">=", "==", "!="};
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "%", "**"};
+
+    private final Random random;
+    private final int variables;
+    private final boolean strings;
+
+    /**
+     * Creates a generator.
+     * @param seed the seed of the random statements
+     * @param variables the number of distinct variables used by the programs
+     */
+    public ProgramGenerator(long seed, int variables) {
+        this(seed, variables, true);
+    }
+
+    /**
+     * Creates a generator.
+     * @param seed the seed of the random statements
+     * @param variables the number of distinct variables used by the programs
+     * @param strings whether the programs print strings, or only use numbers
+     */
+    public ProgramGenerator(long seed, int variables, boolean strings) {
+        this.random = new Random(seed);
+        this.variables = variables;
+        this.strings = strings;
+    }
+
+    /**
+     * Writes statements until at least a given number of characters are written.
+     * @param size the number of characters to write
+     * @param out the writer to write the program to
+     * @return the number of characters written
+     * @throws IOException when the program cannot be written
+     */
+    public long generate(long size, Writer out) throws IOException {
+        StringBuilder statement = new StringBuilder();
+        long written = 0;
+        while (written < size) {
+            statement.setLength(0);
+            appendStatement(statement);
+            statement.append('\n');
+            out.write(statement.toString());
+            written += statement.length();
+        }
+        return written;
+    }
+
+    /**
+     * Generates a program of a given size in memory.
+     * @param size the number of characters to generate
+     * @return the program
+     */
+    public String generate(int size) {
+        StringBuilder program = new StringBuilder(size + 128);
+        while (program.length() < size) {
+            appendStatement(program);
+            program.append('\n');
+        }
+        return program.toString();
+    }
+
+    private void appendStatement(StringBuilder out) {
+        int kind = random.nextInt(10);
+        if (kind < 5) {
+            appendAssignment(out);
+        } else if (kind < 7) {
+            out.append("PRINT(");
+            appendExpression(out, 3);
+            out.append(");");
+        } else if (kind < 8) {
+            if (strings)
+                out.append("PRINT('line ").append(random.nextInt(1000)).append("');");
+            else
+                out.append("PRINT(").append(random.nextInt(1000)).append(");");
+        } else if (kind < 9) {
+            out.append("IF (");
+            appendExpression(out, 2);
+            out.append(' ').append(RELATIONS[random.nextInt(RELATIONS.length)]).append(' ');
+            appendExpression(out, 2);
+            out.append(") ");
+            appendAssignment(out);
+        } else {
+            appendAssignment(out);
+            out.append(random.nextBoolean() ? " # " : " // ").append("comment");
+        }
+    }
+
+    private void appendAssignment(StringBuilder out) {
+        appendVariable(out);
+        out.append(" = ");
+        appendExpression(out, 3);
+        out.append(';');
+    }
+
+    private void appendVariable(StringBuilder out) {
+        out.append('v').append(random.nextInt(variables));
+    }
+
+    private void appendExpression(StringBuilder out, int depth) {
+        int kind = depth == 0 ? random.nextInt(3) : random.nextInt(6);
+        switch (kind) {
+            case 0:
+                appendVariable(out);
+                break;
+            case 1:
+                out.append(random.nextInt(100));
+                break;
+            case 2:
+                out.append(random.nextInt(100)).append('.').append(random.nextInt(100));
+                break;
+            case 3:
+                out.append('(');
+                appendExpression(out, depth - 1);
+                out.append(')');
+                break;
+            case 4:
+                out.append("SQRT(");
+                appendExpression(out, depth - 1);
+                out.append(')');
+                break;
+            default:
+                appendExpression(out, depth - 1);
+                out.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+                appendExpression(out, depth - 1);
+        }
+    }
+
+    /**
+     * Parses a size such as 1024, 1K, 64M or 1G.
+     * @param size the size to parse
+     * @return the number of bytes
+     */
+    public static long parseSize(String size) {
+        long unit = 1;
+        switch (Character.toUpperCase(size.charAt(size.length() - 1))) {
+            case 'K':
+                unit = 1L << 10;
+                break;
+            case 'M':
+                unit = 1L << 20;
+                break;
+            case 'G':
+                unit = 1L << 30;
+                break;
+        }
+        return Long.parseLong(unit == 1 ? size : size.substring(0, size.length() - 1)) * unit;
+    }
+
+    /**
+     * Main driver method.
+     * Usage: ProgramGenerator <size> <file> [seed]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("usage: ProgramGenerator <size, e.g. 1K, 64M, 1G> <file> [seed]");
+            System.exit(2);
+        }
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 130;
+        try (Writer out = new BufferedWriter(new FileWriter(args[1]), 1 << 16)) {
+            long written = new ProgramGenerator(seed, 64).generate(parseSize(args[0]), out);
+            System.out.println("Generated " + written + " characters to " + args[1]);
+        }
+    }
+
+}
@@ -0,0 +1,314 @@
+package check;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import project1.enums.Position;
+import project1.handlers.TokenizerNoComments;
+import project2.CompilerGrammarWithDebug;
+import project2.compiler.Bytecode;
+import project2.compiler.CompileException;
+import project2.compiler.CompilerGrammar;
+import project2.compiler.Optimizer;
+import project2.compiler.ProgramCache;
+import project2.compiler.output.CollectorSink;
+
+/**
+ * Driver program that checks the execution tiers against the debug output of project2.Main: every
+ * java/project2/data/*.in program runs on each tier with a CompilerGrammarWithDebug, and what it
+ * writes is compared with the checked-in .out file. The program is first compiled statement by
+ * statement, like project2.Main does, to find where the statements are and which ones report
+ * errors. The statements between those run together as one program on the tier, so that the
+ * optimizer sees them together. The statements with errors are compiled, like ProgramCache does
+ * with programs it cannot parse, and their errors are written like project2.Main writes them.
+ * Expressions nested hundreds and tens of thousands of levels deep are also run on every tier,
+ * and compared with what compile() prints for them.
+ * Run from the project root, like the other drivers. Exits with status 1 if a tier differs.
+ */
+public class Main {
+
+    private interface Tier {
+        void run(CompilerGrammar grammar, String program) throws CompileException;
+    }
+
+    private static final String[] TIER_NAMES = {
+        "tree", "bytecode", "optimized bytecode", "cache with promotion threshold 1"};
+
+    /**
+     * A statement of a program, as compiled by project2.Main.
+     */
+    private static class Statement {
+
+        final int start;
+        final int end;
+        final int endLine;
+        final boolean failed;
+
+        Statement(int start, int end, int endLine, boolean failed) {
+            this.start = start;
+            this.end = end;
+            this.endLine = endLine;
+            this.failed = failed;
+        }
+    }
+
+    /**
+     * Main driver method.
+     */
+    public static void main(String[] args) throws IOException {
+        List<Path> programs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(Paths.get("java/project2/data"))) {
+            files.filter(path -> path.toString().endsWith(".in")).sorted().forEach(programs::add);
+        }
+
+        int differences = 0;
+        for (Path path : programs) {
+            String name = path.getFileName().toString();
+            Path expectedPath = path.resolveSibling(name.replaceAll("\\.in$", ".out"));
+            String program = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            String expected = new String(Files.readAllBytes(expectedPath), StandardCharsets.UTF_8);
+            List<Statement> statements = split(program);
+            ProgramCache cache = new ProgramCache(statements.size() + 1, 1);
+            Tier[] tiers = {
+                (grammar, text) -> grammar.execute(grammar.parse(text)),
+                (grammar, text) -> grammar.execute(Bytecode.compile(grammar.parse(text))),
+                (grammar, text) -> grammar.execute(
+                    Bytecode.compile(Optimizer.optimize(grammar.parse(text)))),
+                (grammar, text) -> cache.execute(grammar, text)};
+            for (int tier = 0; tier < tiers.length; ++tier) {
+                String output = run(program, statements, tiers[tier]);
+                if (output.equals(expected)) {
+                    System.out.println(name + " " + TIER_NAMES[tier] + ": same");
+                } else {
+                    System.out.println(name + " " + TIER_NAMES[tier] + ": differs at line "
+                                       + firstDifferentLine(output, expected));
+                    ++differences;
+                }
+            }
+        }
+        differences += checkDeepExpressions();
+        if (differences > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Runs deeply nested expressions on every tier, with x bound before each run so that the
+     * optimizer cannot fold them.
+     * @return the number of tiers that differ from compile()
+     */
+    private static int checkDeepExpressions() {
+        String[] names = {"terms", "parentheses", "negations", "inversions", "square roots"};
+        int differences = 0;
+        // the cache compiles the smaller programs to JVM bytecode, but not the larger ones
+        for (int levels : new int[]{200, 50_000}) {
+            String[] expressions = {
+                terms(levels), nested(levels, "(", ")"), nested(levels, "-(", ")"),
+                nested(levels, "/(", ")"), nested(levels, "SQRT(", ")")};
+            for (int i = 0; i < expressions.length; ++i) {
+                String expression = expressions[i];
+                String program = "PRINT(" + expression + "); IF(" + expression + " == "
+                                 + expression + ") y = " + expression + "; PRINT(y);";
+                ProgramCache cache = new ProgramCache(1, 1);
+                Tier[] tiers = {
+                    (grammar, text) -> grammar.execute(grammar.parse(text)),
+                    (grammar, text) -> grammar.execute(Bytecode.compile(grammar.parse(text))),
+                    (grammar, text) -> grammar.execute(
+                        Bytecode.compile(Optimizer.optimize(grammar.parse(text)))),
+                    (grammar, text) -> cache.execute(grammar, text)};
+                String expected = collect(program, CompilerGrammar::compile);
+                for (int tier = 0; tier < tiers.length; ++tier) {
+                    String name = levels + " " + names[i] + " " + TIER_NAMES[tier];
+                    String output = collect(program, tiers[tier]);
+                    if (cache.isCompiled(program))
+                        name += " (jit)";
+                    if (output.equals(expected)) {
+                        System.out.println(name + ": same");
+                    } else {
+                        System.out.println(name + ": differs");
+                        ++differences;
+                    }
+                }
+            }
+        }
+        return differences;
+    }
+
+    /**
+     * Runs a program on a tier with a fresh grammar that collects its output.
+     * @param program the source text of the program
+     * @param tier the tier that runs the program
+     * @return the output printed, followed by the error that stopped the program
+     */
+    private static String collect(String program, Tier tier) {
+        CompilerGrammar grammar = new CompilerGrammar();
+        CollectorSink sink = new CollectorSink();
+        grammar.setOutputSink(sink);
+        grammar.define("x", 3.0);
+        try {
+            tier.run(grammar, program);
+        } catch (CompileException | RuntimeException e) {
+            sink.print(e.getMessage());
+        }
+        return sink.getText();
+    }
+
+    /**
+     * Generates an expression of terms joined by all operators but exponentiation, which the
+     * grammar nests to the right.
+     * @param count the number of terms
+     * @return the expression
+     */
+    private static String terms(int count) {
+        String[] operators = {" + ", " - ", " * ", " / ", " % "};
+        StringBuilder expression = new StringBuilder("x");
+        for (int i = 1; i < count; ++i)
+            expression.append(operators[i % operators.length]).append(i % 2 == 0 ? "x" : i % 7 + 1);
+        return expression.toString();
+    }
+
+    /**
+     * Generates an expression of the variable x nested in a prefix and suffix.
+     * @param depth the number of levels
+     * @param prefix the text opening each level
+     * @param suffix the text closing each level
+     * @return the expression
+     */
+    private static String nested(int depth, String prefix, String suffix) {
+        int length = depth * (prefix.length() + suffix.length()) + 1;
+        StringBuilder expression = new StringBuilder(length);
+        for (int i = 0; i < depth; ++i)
+            expression.append(prefix);
+        expression.append('x');
+        for (int i = 0; i < depth; ++i)
+            expression.append(suffix);
+        return expression.toString();
+    }
+
+    /**
+     * Compiles a program statement by statement like project2.Main, discarding the output.
+     * @param program the source text of the program
+     * @return the statements of the program
+     */
+    private static List<Statement> split(String program) {
+        List<Integer> lineStarts = new ArrayList<>();
+        lineStarts.add(0);
+        for (int p = 0; p < program.length(); ++p)
+            if (program.charAt(p) == '\n')
+                lineStarts.add(p + 1);
+
+        CompilerGrammarWithDebug compiler =
+            new CompilerGrammarWithDebug(new PrintStream(OutputStream.nullOutputStream()));
+        compiler.startCompiling(new TokenizerNoComments(program), true);
+        List<Statement> statements = new ArrayList<>();
+        while (true) {
+            try {
+                if (!compiler.compileStatement())
+                    break;
+            } catch (CompileException ignore) {
+                // for compiler grammar debug, exceptions are logged and not thrown
+            }
+            long end = compiler.getStatementEndPosition();
+            statements.add(new Statement(
+                offsetOf(compiler.getStatementPosition(), lineStarts, program),
+                Math.min(offsetOf(end, lineStarts, program) + 1, program.length()),
+                Position.line(end), !compiler.getErrors().isEmpty()));
+            compiler.getErrors().clear();
+        }
+        return statements;
+    }
+
+    private static int offsetOf(long position, List<Integer> lineStarts, String program) {
+        int line = Math.min(Position.line(position), lineStarts.size());
+        return Math.min(lineStarts.get(line - 1) + Position.column(position) - 1,
+                        program.length());
+    }
+
+    /**
+     * Runs the statements of a program on a tier with a debug grammar.
+     * @param program the source text of the program
+     * @param statements the statements of the program
+     * @param tier the tier that runs the statements without errors
+     * @return the debug output
+     */
+    private static String run(String program, List<Statement> statements, Tier tier) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream debugStream = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+        CompilerGrammarWithDebug compiler = new CompilerGrammarWithDebug(debugStream);
+        int previousEndLine = 0;
+        int i = 0;
+        while (i < statements.size()) {
+            Statement first = statements.get(i);
+            if (first.failed) {
+                // compile the statement alone, on the same lines as in the program
+                compiler.startCompiling(
+                    new TokenizerNoComments(textOf(program, first, first)), true);
+                try {
+                    compiler.compileStatement();
+                } catch (CompileException ignore) {
+                    // for compiler grammar debug, exceptions are logged and not thrown
+                }
+                if (!compiler.getErrors().isEmpty()) {
+                    debugStream.println(project2.Main.compileErrorMessage(previousEndLine,
+                        compiler.getStatementPosition(), compiler.getStatementEndPosition(),
+                        compiler.getErrors()));
+                    compiler.getErrors().clear();
+                }
+                previousEndLine = first.endLine;
+                ++i;
+                continue;
+            }
+            int last = i;
+            while (last + 1 < statements.size() && !statements.get(last + 1).failed)
+                ++last;
+            try {
+                tier.run(compiler, textOf(program, first, statements.get(last)));
+            } catch (CompileException | RuntimeException e) {
+                compiler.getErrors().add(e.toString());
+            }
+            // the statements compiled without errors, so the tier must not report any either
+            if (!compiler.getErrors().isEmpty()) {
+                debugStream.println("tier errors " + compiler.getErrors());
+                compiler.getErrors().clear();
+            }
+            previousEndLine = statements.get(last).endLine;
+            i = last + 1;
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the text of a range of statements, preceded by as many endlines as the program has
+     * before it, so that it is on the same lines.
+     * @param program the source text of the program
+     * @param first the first statement of the range
+     * @param last the last statement of the range
+     * @return the text of the statements
+     */
+    private static String textOf(String program, Statement first, Statement last) {
+        int lines = 0;
+        for (int p = 0; p < first.start; ++p)
+            if (program.charAt(p) == '\n')
+                ++lines;
+        return "\n".repeat(lines) + program.substring(first.start, last.end);
+    }
+
+    private static int firstDifferentLine(String output, String expected) {
+        String[] outputLines = output.split("\n", -1);
+        String[] expectedLines = expected.split("\n", -1);
+        int line = 0;
+        while (line < outputLines.length && line < expectedLines.length
+               && outputLines[line].equals(expectedLines[line]))
+            ++line;
+        return line + 1;
+    }
+
+}
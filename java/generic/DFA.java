@@ -1,9 +1,14 @@
 package generic;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.function.Function;
 
 /**
  * A Discrete Finite Automaton represented by a graph, and states as nodes.
@@ -48,6 +53,145 @@ public class DFA {
         }
     }
 
+    /**
+     * Minimizes this DFA with Hopcroft's algorithm, and returns the minimized DFA. States are
+     * equivalent if they have the same finality, the same partition key, and equivalent next
+     * states for every transition symbol. A missing transition goes to an implicit dead state,
+     * which stays missing in the minimized DFA.
+     * @param partitionKey maps a state to a key, states with different keys are never merged
+     * @param stopAtFinalStates whether the DFA stops as soon as it reaches a final state, in
+     *                          which case the transitions of final states are dropped
+     * @param representatives filled with the state of the minimized DFA for every reachable
+     *                        state of this DFA, can be null
+     * @return the minimized DFA
+     */
+    public DFA minimize(Function<State, Object> partitionKey,
+                        boolean stopAtFinalStates,
+                        Map<State, State> representatives) {
+
+        // number the reachable states and the transition symbols, the dead state is last
+        List<State> states = new ArrayList<>();
+        Map<State, Integer> stateIds = new HashMap<>();
+        List<Object> symbols = new ArrayList<>();
+        Map<Object, Integer> symbolIds = new HashMap<>();
+        stateIds.put(start, 0);
+        states.add(start);
+        dfs((Object transition, State prevState, State nextState) -> {
+            if (stopAtFinalStates && prevState.isFinal())
+                return;
+            if (!symbolIds.containsKey(transition)) {
+                symbolIds.put(transition, symbols.size());
+                symbols.add(transition);
+            }
+            if (!stateIds.containsKey(nextState)) {
+                stateIds.put(nextState, states.size());
+                states.add(nextState);
+            }
+        });
+        int dead = states.size();
+        int numberOfStates = dead + 1;
+        int numberOfSymbols = symbols.size();
+
+        // transitions and inverse transitions
+        int[][] next = new int[numberOfStates][numberOfSymbols];
+        List<List<List<Integer>>> previous = new ArrayList<>();
+        for (int q = 0; q < numberOfStates; ++q) {
+            List<List<Integer>> perSymbol = new ArrayList<>();
+            for (int c = 0; c < numberOfSymbols; ++c)
+                perSymbol.add(new ArrayList<>());
+            previous.add(perSymbol);
+        }
+        for (int q = 0; q < numberOfStates; ++q) {
+            for (int c = 0; c < numberOfSymbols; ++c) {
+                State target = q == dead || (stopAtFinalStates && states.get(q).isFinal())
+                    ? null
+                    : states.get(q).getNext(symbols.get(c));
+                next[q][c] = target == null ? dead : stateIds.get(target);
+                previous.get(next[q][c]).get(c).add(q);
+            }
+        }
+
+        // initial partition by finality and key
+        int[] block = new int[numberOfStates];
+        List<List<Integer>> blocks = new ArrayList<>();
+        Map<Object, Integer> blockOfKey = new HashMap<>();
+        for (int q = 0; q < numberOfStates; ++q) {
+            Object key = q == dead
+                ? dead
+                : Arrays.asList(states.get(q).isFinal(), partitionKey.apply(states.get(q)));
+            Integer b = blockOfKey.get(key);
+            if (b == null) {
+                blockOfKey.put(key, b = blocks.size());
+                blocks.add(new ArrayList<>());
+            }
+            block[q] = b;
+            blocks.get(b).add(q);
+        }
+
+        // refine the partition, using blocks as splitters
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        boolean[] inWorklist = new boolean[numberOfStates + 1];
+        for (int b = 0; b < blocks.size(); ++b) {
+            worklist.add(b);
+            inWorklist[b] = true;
+        }
+        while (!worklist.isEmpty()) {
+            int splitter = worklist.poll();
+            inWorklist[splitter] = false;
+            List<Integer> splitterStates = new ArrayList<>(blocks.get(splitter));
+            for (int c = 0; c < numberOfSymbols; ++c) {
+
+                // states that go to the splitter on this symbol, grouped by block
+                Map<Integer, List<Integer>> hits = new HashMap<>();
+                for (int q : splitterStates)
+                    for (int p : previous.get(q).get(c))
+                        hits.computeIfAbsent(block[p], b -> new ArrayList<>()).add(p);
+
+                for (Map.Entry<Integer, List<Integer>> entry : hits.entrySet()) {
+                    int b = entry.getKey();
+                    List<Integer> inside = entry.getValue();
+                    if (inside.size() == blocks.get(b).size())
+                        continue;
+
+                    // split the block, the states that go to the splitter get a new block
+                    int newBlock = blocks.size();
+                    blocks.get(b).removeAll(new HashSet<>(inside));
+                    blocks.add(inside);
+                    for (int p : inside)
+                        block[p] = newBlock;
+                    if (inWorklist[b] || inside.size() <= blocks.get(b).size()) {
+                        worklist.add(newBlock);
+                        inWorklist[newBlock] = true;
+                    } else {
+                        worklist.add(b);
+                        inWorklist[b] = true;
+                    }
+                }
+            }
+        }
+
+        // build the minimized DFA, one state per block except the dead state's block
+        DFA minimized = new DFA();
+        State[] newStates = new State[blocks.size()];
+        newStates[block[0]] = minimized.getStartState();
+        for (int b = 0; b < blocks.size(); ++b)
+            if (newStates[b] == null && b != block[dead])
+                newStates[b] = new State();
+        for (int b = 0; b < blocks.size(); ++b) {
+            if (b == block[dead])
+                continue;
+            int q = blocks.get(b).get(0);
+            newStates[b].setFinal(states.get(q).isFinal());
+            for (int c = 0; c < numberOfSymbols; ++c)
+                if (block[next[q][c]] != block[dead])
+                    newStates[b].transition(symbols.get(c), newStates[block[next[q][c]]]);
+        }
+        if (representatives != null)
+            for (int q = 0; q < dead; ++q)
+                representatives.put(states.get(q), newStates[block[q]]);
+        return minimized;
+    }
+
     /**
      * A function object for DFS callbacks.
      * @param <T> parameter type for the transition used
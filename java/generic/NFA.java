@@ -0,0 +1,281 @@
+package generic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Nondeterministic Finite Automaton over characters, built from regular expressions with
+ * Thompson's construction, and turned into a DFA with the subset construction. Every ASCII
+ * character is its own transition symbol, and all other characters share the symbol OTHER.
+ * Supported syntax: literals, escapes (\n, \t, \0, and \ before any other character), '.',
+ * character classes with ranges ([a-z], [^"\n]), grouping, '|', '*', '+' and '?'.
+ * The '\0' character marks the end of the input, so it is only matched when written explicitly.
+ */
+public class NFA {
+
+    /**
+     * The transition symbol of every character outside of the ASCII table.
+     */
+    public static final int OTHER = 128;
+
+    /**
+     * The number of transition symbols.
+     */
+    public static final int ALPHABET_SIZE = 129;
+
+    // per NFA state: the symbols of its transition, the target of that transition,
+    // the targets of its epsilon transitions, and its accept tag (-1 if not accepting)
+    private final List<BitSet> symbols = new ArrayList<>();
+    private final List<Integer> targets = new ArrayList<>();
+    private final List<List<Integer>> epsilons = new ArrayList<>();
+    private final List<Integer> acceptTags = new ArrayList<>();
+
+    private final int start = newState();
+
+    // state of the regular expression parser
+    private String regex;
+    private int position;
+
+    /**
+     * Adds an alternative to this NFA that accepts a regular expression with a given tag.
+     * @param regex the regular expression
+     * @param tag the tag of the accepting state, a lower tag has a higher priority
+     * @throws IllegalArgumentException if the regular expression is invalid or matches the
+     *                                  empty string
+     */
+    public void addRule(String regex, int tag) {
+        this.regex = regex;
+        this.position = 0;
+        int[] fragment = parseAlternation();
+        if (position < regex.length())
+            throw error("unexpected '" + regex.charAt(position) + "'");
+        if (closure(bitSetOf(fragment[0])).get(fragment[1]))
+            throw new IllegalArgumentException("regex /" + regex + "/ matches the empty string");
+        epsilons.get(start).add(fragment[0]);
+        acceptTags.set(fragment[1], tag);
+    }
+
+    /**
+     * Determinizes this NFA with the subset construction. Missing transitions of the DFA mean
+     * that no rule can match anymore.
+     * @param acceptTags filled with the lowest accept tag of every accepting DFA state
+     * @return the DFA that accepts the same rules
+     */
+    public DFA toDFA(Map<DFA.State, Integer> acceptTags) {
+        DFA dfa = new DFA();
+        Map<BitSet, DFA.State> dfaStates = new HashMap<>();
+        ArrayDeque<BitSet> queue = new ArrayDeque<>();
+        BitSet initial = closure(bitSetOf(start));
+        dfaStates.put(initial, dfa.getStartState());
+        queue.add(initial);
+        while (!queue.isEmpty()) {
+            BitSet current = queue.poll();
+            DFA.State state = dfaStates.get(current);
+
+            // accept with the rule of the highest priority
+            int tag = -1;
+            for (int q = current.nextSetBit(0); q >= 0; q = current.nextSetBit(q + 1))
+                if (this.acceptTags.get(q) >= 0 && (tag < 0 || this.acceptTags.get(q) < tag))
+                    tag = this.acceptTags.get(q);
+            if (tag >= 0)
+                acceptTags.put(state, tag);
+
+            for (int symbol = 0; symbol < ALPHABET_SIZE; ++symbol) {
+                BitSet moved = new BitSet();
+                for (int q = current.nextSetBit(0); q >= 0; q = current.nextSetBit(q + 1))
+                    if (symbols.get(q) != null && symbols.get(q).get(symbol))
+                        moved.set(targets.get(q));
+                if (moved.isEmpty())
+                    continue;
+                BitSet next = closure(moved);
+                DFA.State nextState = dfaStates.get(next);
+                if (nextState == null) {
+                    dfaStates.put(next, state.transition(symbol));
+                    queue.add(next);
+                } else {
+                    state.transition(symbol, nextState);
+                }
+            }
+        }
+        return dfa;
+    }
+
+    private int newState() {
+        symbols.add(null);
+        targets.add(-1);
+        epsilons.add(new ArrayList<>());
+        acceptTags.add(-1);
+        return symbols.size() - 1;
+    }
+
+    private BitSet bitSetOf(int state) {
+        BitSet set = new BitSet();
+        set.set(state);
+        return set;
+    }
+
+    /**
+     * Adds every state reachable through epsilon transitions to a set of states.
+     * @param states the set of states
+     * @return the same set, with its epsilon closure
+     */
+    private BitSet closure(BitSet states) {
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        for (int q = states.nextSetBit(0); q >= 0; q = states.nextSetBit(q + 1))
+            stack.push(q);
+        while (!stack.isEmpty())
+            for (int next : epsilons.get(stack.pop()))
+                if (!states.get(next)) {
+                    states.set(next);
+                    stack.push(next);
+                }
+        return states;
+    }
+
+    // fragments are {start, end} pairs of NFA states
+
+    private int[] parseAlternation() {
+        int[] fragment = parseConcatenation();
+        while (position < regex.length() && regex.charAt(position) == '|') {
+            ++position;
+            int[] other = parseConcatenation();
+            int s = newState();
+            int e = newState();
+            epsilons.get(s).add(fragment[0]);
+            epsilons.get(s).add(other[0]);
+            epsilons.get(fragment[1]).add(e);
+            epsilons.get(other[1]).add(e);
+            fragment = new int[]{s, e};
+        }
+        return fragment;
+    }
+
+    private int[] parseConcatenation() {
+        int s = newState();
+        int[] fragment = {s, s};
+        while (position < regex.length() && regex.charAt(position) != '|'
+            && regex.charAt(position) != ')') {
+            int[] next = parseRepetition();
+            epsilons.get(fragment[1]).add(next[0]);
+            fragment = new int[]{fragment[0], next[1]};
+        }
+        return fragment;
+    }
+
+    private int[] parseRepetition() {
+        int[] fragment = parseAtom();
+        while (position < regex.length() && "*+?".indexOf(regex.charAt(position)) >= 0) {
+            char op = regex.charAt(position++);
+            int s = newState();
+            int e = newState();
+            epsilons.get(s).add(fragment[0]);
+            epsilons.get(fragment[1]).add(e);
+            if (op != '+')
+                epsilons.get(s).add(e); // skip
+            if (op != '?')
+                epsilons.get(fragment[1]).add(fragment[0]); // repeat
+            fragment = new int[]{s, e};
+        }
+        return fragment;
+    }
+
+    private int[] parseAtom() {
+        if (position >= regex.length())
+            throw error("expected an expression");
+        char ch = regex.charAt(position++);
+        BitSet set = new BitSet();
+        switch (ch) {
+            case '(': {
+                int[] fragment = parseAlternation();
+                if (position >= regex.length() || regex.charAt(position) != ')')
+                    throw error("expected ')'");
+                ++position;
+                return fragment;
+            }
+            case '[':
+                set = parseClass();
+                break;
+            case '.':
+                set.set(1, ALPHABET_SIZE);
+                set.clear('\n');
+                break;
+            case '*':
+            case '+':
+            case '?':
+            case ')':
+            case ']':
+                throw error("unexpected '" + ch + "'");
+            case '\\':
+                set.set(parseEscape());
+                break;
+            default:
+                set.set(symbolOf(ch));
+        }
+        int s = newState();
+        int e = newState();
+        symbols.set(s, set);
+        targets.set(s, e);
+        return new int[]{s, e};
+    }
+
+    private BitSet parseClass() {
+        BitSet set = new BitSet();
+        boolean negate = position < regex.length() && regex.charAt(position) == '^';
+        if (negate)
+            ++position;
+        while (position < regex.length() && regex.charAt(position) != ']') {
+            int low = parseClassCharacter();
+            int high = low;
+            if (position + 1 < regex.length() && regex.charAt(position) == '-'
+                && regex.charAt(position + 1) != ']') {
+                ++position;
+                high = parseClassCharacter();
+            }
+            if (high < low)
+                throw error("invalid range");
+            set.set(low, high + 1);
+        }
+        if (position >= regex.length())
+            throw error("expected ']'");
+        ++position;
+        if (negate) {
+            set.flip(1, ALPHABET_SIZE); // never matches the end of the input
+            set.clear(0);
+        }
+        return set;
+    }
+
+    private int parseClassCharacter() {
+        char ch = regex.charAt(position++);
+        return ch == '\\' ? parseEscape() : symbolOf(ch);
+    }
+
+    private int parseEscape() {
+        if (position >= regex.length())
+            throw error("expected an escaped character");
+        char ch = regex.charAt(position++);
+        switch (ch) {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case '0':
+                return 0;
+            default:
+                return symbolOf(ch);
+        }
+    }
+
+    private static int symbolOf(char ch) {
+        return ch < OTHER ? ch : OTHER;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("regex /" + regex + "/ at " + position + ": " + message);
+    }
+
+}
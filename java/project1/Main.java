@@ -48,27 +48,29 @@ public class Main {
         BufferedReader br = new BufferedReader(new FileReader(folder + inputFilename));
         PrintWriter pw = new PrintWriter(new FileWriter(folder + outputFilename));
 
-        // Build input string
-        String line;
-        StringBuilder builder = null;
-        while ((line = br.readLine()) != null) {
-            if (builder == null)
-                builder = new StringBuilder();
-            else
-                builder.append("\n");
-            builder.append(line);
-        }
+        // Tokenize, streaming from the input file
+        tokenize(new TokenizerNoComments(br), pw);
 
-        // Tokenize
-        String input = builder.toString();
-        Tokenizer tokenizer = new TokenizerNoComments(input);
+        pw.close();
+    }
+
+    /**
+     * Writes every token of a tokenizer except comments, one per line, with its type and lexeme.
+     *
+     * @param tokenizer the tokenizer to read
+     * @param pw the writer where the tokens go
+     * @return the number of tokens written
+     */
+    public static long tokenize(Tokenizer tokenizer, PrintWriter pw) {
+        long tokens = 0;
         while (tokenizer.hasNextToken()) {
             Token token = tokenizer.nextToken();
-            if (token.getTokenType() != TokenType.COMMENT)
+            if (token.getTokenType() != TokenType.COMMENT) {
                 pw.println(token.getTokenType() + "\t" + token.getLexeme());
+                ++tokens;
+            }
         }
-
-        pw.close();
+        return tokens;
     }
 
 }
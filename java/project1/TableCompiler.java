@@ -0,0 +1,49 @@
+package project1;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import project1.handlers.Tokenizer;
+import project1.handlers.TokenizerHandler;
+
+/**
+ * Driver program that precompiles the tokenizer tables to a file, so that later runs can load
+ * them with -Dproject1.lexer.tables=<file> instead of building the DFA graph.
+ */
+public class TableCompiler {
+
+    /**
+     * Main driver method.
+     * Usage: TableCompiler export <file> | verify <file>
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length != 2 || !(args[0].equals("export") || args[0].equals("verify"))) {
+            System.out.println("usage: TableCompiler export <file> | verify <file>");
+            System.exit(2);
+        }
+
+        TokenizerHandler built = Tokenizer.buildHandler();
+        if (args[0].equals("export")) {
+            try (OutputStream out = new FileOutputStream(args[1])) {
+                built.writeTables(out);
+            }
+            System.out.println("Exported tokenizer tables to " + args[1]);
+        }
+
+        // check that the tables in the file match the ones built from the DFA graph
+        TokenizerHandler loaded;
+        try (InputStream in = new FileInputStream(args[1])) {
+            loaded = new TokenizerHandler(in);
+        }
+        if (!loaded.hasSameTables(built)) {
+            System.out.println("Tokenizer tables in " + args[1] + " are out of date");
+            System.exit(1);
+        }
+        System.out.println("Tokenizer tables in " + args[1] + " match the DFA graph");
+    }
+
+}
@@ -0,0 +1,55 @@
+package project1.enums;
+
+/**
+ * Packs the line and column of a position in the source into a single long, so that tokenizers
+ * can keep a position for every token without allocating. The line is in the upper 32 bits and
+ * the column in the lower 32 bits, so packed positions compare in source order.
+ */
+public final class Position {
+
+    /**
+     * The position of the first character of the source.
+     */
+    public static final long START = of(1, 1);
+
+    private Position() {
+    }
+
+    /**
+     * Packs a line and a column into a position.
+     * @param line the line number, starting at 1
+     * @param column the column number, starting at 1
+     * @return the packed position
+     */
+    public static long of(int line, int column) {
+        return ((long) line << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets the line of a packed position.
+     * @param position the packed position
+     * @return the line number, starting at 1
+     */
+    public static int line(long position) {
+        return (int) (position >>> 32);
+    }
+
+    /**
+     * Gets the column of a packed position.
+     * @param position the packed position
+     * @return the column number, starting at 1
+     */
+    public static int column(long position) {
+        return (int) position;
+    }
+
+    /**
+     * Formats a packed position as line:column.
+     * @param position the packed position
+     * @return the formatted position
+     */
+    public static String toString(long position) {
+        return line(position) + ":" + column(position);
+    }
+
+}
@@ -34,7 +34,7 @@ public enum Symbol {
     // you can add more symbols here
     ;
 
-    private static HashMap<Character, Symbol> characterMap = new HashMap<>();
+    private static final HashMap<Character, Symbol> characterMap = new HashMap<>();
 
     static {
         for (Symbol symbol : Symbol.values()) {
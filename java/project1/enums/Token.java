@@ -5,8 +5,18 @@ package project1.enums;
  */
 public class Token {
 
-    private TokenType type;
-    private String lexeme;
+    private static final Token[] sharedTokens = new Token[TokenType.values().length];
+
+    static {
+        for (TokenType type : TokenType.values()) {
+            String lexeme = getFixedLexeme(type);
+            if (lexeme != null)
+                sharedTokens[type.ordinal()] = new Token(type, lexeme);
+        }
+    }
+
+    private final TokenType type;
+    private final String lexeme;
 
     /**
      * Constructs a token given a token type and lexeme.
@@ -50,4 +60,70 @@ public class Token {
         return type.ordinal();
     }
 
-}
\ No newline at end of file
+    /**
+     * Gets the shared instance of a token type that always has the same lexeme, such as
+     * punctuation, operators and keywords.
+     * @param type the token type
+     * @return the shared token, null if the token type has no fixed lexeme
+     */
+    public static Token getShared(TokenType type) {
+        return sharedTokens[type.ordinal()];
+    }
+
+    /**
+     * Gets the lexeme that a token type always has.
+     * @param type the token type
+     * @return the fixed lexeme, null if the lexeme of the token type varies
+     */
+    private static String getFixedLexeme(TokenType type) {
+        switch (type) {
+            case EOF:
+                return "\0";
+            case PLUS:
+                return "+";
+            case MINUS:
+                return "-";
+            case MULT:
+                return "*";
+            case DIVIDE:
+                return "/";
+            case MODULO:
+                return "%";
+            case EXP:
+                return "**";
+            case LPAREN:
+                return "(";
+            case RPAREN:
+                return ")";
+            case COMMA:
+                return ",";
+            case PERIOD:
+                return ".";
+            case SEMICOLON:
+                return ";";
+            case EQUALS:
+                return "==";
+            case NOT_EQUALS:
+                return "!=";
+            case GREATER_THAN:
+                return ">";
+            case GREATER_THAN_OR_EQUALS:
+                return ">=";
+            case LESS_THAN:
+                return "<";
+            case LESS_THAN_OR_EQUALS:
+                return "<=";
+            case IF:
+                return "IF";
+            case PRINT:
+                return "PRINT";
+            case SQRT:
+                return "SQRT";
+            case ASSIGNMENT:
+                return "=";
+            default:
+                return null;
+        }
+    }
+
+}
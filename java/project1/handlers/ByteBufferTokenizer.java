@@ -0,0 +1,246 @@
+package project1.handlers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import project1.enums.TokenType;
+
+/**
+ * Tokenizer class for parsing tokens directly from ASCII/UTF-8 bytes, such as a memory-mapped
+ * file, without decoding them to characters first. Every Symbol is ASCII, so bytes outside the
+ * ASCII table use the column of Symbol.ERROR, which is either an invalid token or part of a
+ * string/comment. Only lexemes that are asked for are decoded, and the columns of positions count
+ * bytes rather than characters.
+ */
+public class ByteBufferTokenizer extends Tokenizer {
+
+    /**
+     * Default size of the window mapped from a file.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    private ByteBuffer bytes; // the current window of bytes
+    private final int[] byteColumns = new int[256]; // maps unsigned bytes to their column
+
+    // source of more windows, null if the byte buffer holds everything
+    private FileChannel channel;
+    private long channelSize;
+    private long windowOffset; // offset of the current window in the channel
+    private int windowSize;
+
+    /**
+     * Constructs a tokenizer over the remaining bytes of a byte buffer.
+     * @param bytes the byte buffer to tokenize
+     */
+    public ByteBufferTokenizer(ByteBuffer bytes) {
+        this(bytes, getHandler());
+    }
+
+    /**
+     * Constructs a tokenizer over the remaining bytes of a byte buffer that uses the compiled
+     * tables of a handler.
+     * @param bytes the byte buffer to tokenize
+     * @param handler the handler whose tables are used for tokenizing
+     */
+    public ByteBufferTokenizer(ByteBuffer bytes, TokenizerHandler handler) {
+        super(new char[0], 0, null, handler);
+        for (int i = 0; i < byteColumns.length; ++i)
+            byteColumns[i] = i < characterColumns.length ? characterColumns[i] : errorColumn;
+        this.bytes = bytes.slice();
+        this.limit = this.bytes.limit();
+    }
+
+    /**
+     * Constructs a tokenizer that maps a file channel into memory one window at a time. A new
+     * window is mapped from the start of the current token whenever the tokenizer runs out of
+     * bytes, so files larger than a single mapping can be tokenized.
+     * @param channel the file channel to tokenize
+     * @param windowSize the number of bytes to map at a time
+     * @param handler the handler whose tables are used for tokenizing
+     * @throws IOException when the file cannot be mapped
+     */
+    public ByteBufferTokenizer(FileChannel channel, int windowSize, TokenizerHandler handler)
+        throws IOException {
+        this(ByteBuffer.allocate(0), handler);
+        this.channel = channel;
+        this.channelSize = channel.size();
+        this.windowSize = Math.max(windowSize, 1);
+        map(0);
+    }
+
+    /**
+     * Opens a file and tokenizes it through memory-mapped windows.
+     * @param path the path of the file to tokenize
+     * @return the tokenizer of the file
+     * @throws IOException when the file cannot be opened or mapped
+     */
+    public static ByteBufferTokenizer open(Path path) throws IOException {
+        return new ByteBufferTokenizer(FileChannel.open(path, StandardOpenOption.READ),
+            DEFAULT_WINDOW_SIZE, getHandler());
+    }
+
+    /**
+     * Maps the window of the channel starting at a given offset.
+     * @param offset the offset in the channel
+     */
+    private void map(long offset) throws IOException {
+        windowOffset = offset;
+        long size = Math.min(windowSize, channelSize - offset);
+        bytes = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        limit = (int) size;
+        if (offset + size >= channelSize) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Maps a new window that starts at a given offset of the current window. Grows the window
+     * if the offset is the start of the current window.
+     * @param keepFrom the offset of the first byte to keep
+     * @return the number of bytes discarded from the front of the window
+     */
+    private int remap(int keepFrom) {
+        discardPositions(keepFrom);
+        try {
+            if (keepFrom == 0)
+                windowSize = (int) Math.min((long) windowSize * 2, Integer.MAX_VALUE);
+            map(windowOffset + keepFrom);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return keepFrom;
+    }
+
+    /**
+     * Parses the next token from the bytes as a span. Same as Tokenizer.nextSpan(), but reads
+     * bytes from the byte buffer. An invalid token that ends in the middle of a UTF-8 sequence
+     * is extended to the end of the sequence, the same way a Tokenizer sees it as one character.
+     * @return the token type of the span
+     */
+    @Override
+    public TokenType nextSpan() {
+
+        // traverse dfa states
+        int p = pointer;
+        int start = p;
+        int state;
+        for (state = startState; (finalStateBits[state >>> 6] & (1L << state)) == 0; ++p) {
+            if (p >= limit && channel != null) {
+                // out of bytes, map a new window from the current span
+                int shift = remap(start);
+                p -= shift;
+                start -= shift;
+            }
+            int column = p < limit ? byteColumns[bytes.get(p) & 0xFF] : characterColumns[0];
+            if (column == -1) {
+                // invalid character
+                pointer = p + 1;
+                return setSpan(TokenType.ERROR, start, p + 1 - start);
+            }
+            state = transitionTable[state * columnCount + column];
+            if (state == -1) {
+                // trap state
+                pointer = p + 1;
+                return setSpan(TokenType.ERROR, start, p - start);
+            }
+            if (state == startState)
+                start = p + 1; // skipped symbols are not part of the lexeme
+        }
+
+        // rollback if needed
+        for (int i = rollbacks[state]; i > 0 && p > 0; --i)
+            --p;
+
+        // keep the rest of a UTF-8 sequence in an invalid token
+        TokenType type = tokenMap[state];
+        while (type == TokenType.ERROR && p > start) {
+            if (p >= limit && channel != null) {
+                int shift = remap(start);
+                p -= shift;
+                start -= shift;
+            }
+            if (p >= limit || (bytes.get(p) & 0xC0) != 0x80)
+                break;
+            ++p;
+        }
+        pointer = p;
+
+        // special identifiers
+        if (type == TokenType.IDENT)
+            type = getIdentifierType(start, p - start);
+        return setSpan(type, start, p - start);
+
+    }
+
+    @Override
+    void countNewlines(int from, int to) {
+        for (int p = from; p < to; ++p) {
+            if (bytes.get(p) == '\n') {
+                ++line;
+                lineStart = p + 1;
+            }
+        }
+    }
+
+    /**
+     * Getter for the byte buffer that spans point into. When mapping a channel, this is the
+     * current window.
+     * @return the byte buffer
+     */
+    public ByteBuffer getByteBuffer() {
+        return bytes;
+    }
+
+    /**
+     * Getter for the offset of the last span from the start of the input.
+     * @return the absolute start offset of the last span
+     */
+    public long getSpanOffset() {
+        return windowOffset + spanStart;
+    }
+
+    /**
+     * Decodes the lexeme of the last span as UTF-8.
+     * @return the lexeme of the last span
+     */
+    @Override
+    public String getSpanLexeme() {
+        int available = Math.max(0, Math.min(spanLength, limit - spanStart));
+        byte[] lexeme = new byte[spanLength]; // pad the part past the buffer with EOF
+        if (available > 0)
+            bytes.get(spanStart, lexeme, 0, available);
+        return new String(lexeme, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    boolean spanEquals(int start, String lexeme) {
+        for (int i = 0; i < lexeme.length(); ++i) {
+            int p = start + i;
+            int b = p < limit ? bytes.get(p) & 0xFF : 0;
+            if (b != lexeme.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public char peekCharacter() {
+        if (pointer >= limit && channel != null) {
+            int shift = remap(spanStart);
+            pointer -= shift;
+            spanStart -= shift;
+        }
+        if (pointer < limit) {
+            int b = bytes.get(pointer) & 0xFF;
+            return b < 0x80 ? (char) b : '\uFFFD';
+        }
+        return '\0';
+    }
+
+}
@@ -0,0 +1,60 @@
+package project1.handlers;
+
+import java.util.Objects;
+
+import project1.enums.TokenType;
+
+/**
+ * A rule of a generated tokenizer: a regular expression, and the token type of its matches.
+ * When rules match lexemes of the same length, the rule that comes first wins.
+ */
+public final class LexerRule {
+
+    private final String regex;
+    private final TokenType type;
+
+    /**
+     * Creates a rule from a regular expression and a token type.
+     * @param regex the regular expression, in the syntax accepted by generic.NFA
+     * @param type the token type of the lexemes matched by the regular expression
+     */
+    public LexerRule(String regex, TokenType type) {
+        this.regex = Objects.requireNonNull(regex);
+        this.type = Objects.requireNonNull(type);
+    }
+
+    /**
+     * Getter for the regular expression of this rule.
+     * @return the regular expression
+     */
+    public String getRegex() {
+        return regex;
+    }
+
+    /**
+     * Getter for the token type of this rule.
+     * @return the token type
+     */
+    public TokenType getType() {
+        return type;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof LexerRule))
+            return false;
+        LexerRule other = (LexerRule) o;
+        return regex.equals(other.regex) && type == other.type;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * regex.hashCode() + type.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return type + " /" + regex + "/";
+    }
+
+}
@@ -1,5 +1,8 @@
 package project1.handlers;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -16,7 +19,11 @@ import static project1.enums.Symbol.*;
  */
 class LexicalTokenizerHandler extends TokenizerHandler {
 
-    private static LexicalTokenizerHandler instance = null;
+    /**
+     * System property with the path of tables written by TokenizerHandler.writeTables(). When
+     * set, getInstance() loads these tables instead of building the DFA graph.
+     */
+    public static final String TABLES_PROPERTY = "project1.lexer.tables";
 
     /**
      * Private constructor for creating a TokenizerHandler based on a DFA, the set of rollback
@@ -34,14 +41,43 @@ class LexicalTokenizerHandler extends TokenizerHandler {
         // System.out.println("Created lexical tokenizer handler, with " + this.getDfaTable().length + " states");
     }
 
+    /**
+     * Holds the singleton instance, which the JVM creates once, the first time it is used, and
+     * publishes safely to all threads.
+     */
+    private static class InstanceHolder {
+        static final TokenizerHandler INSTANCE = load();
+    }
+
     /**
      * Gets the singleton instance of this tokenizer handler. Creates the handler DFA and respective
-     * state maps when first called.
+     * state maps when first called, or loads precompiled tables if TABLES_PROPERTY is set. The
+     * tables of the instance are never changed, so it can be shared by tokenizers on any thread.
      * @return the lexical tokenizer handler instance
      */
-    public static LexicalTokenizerHandler getInstance() {
-        if (instance != null)
-            return instance;
+    public static TokenizerHandler getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private static TokenizerHandler load() {
+        String tables = System.getProperty(TABLES_PROPERTY);
+        if (tables != null) {
+            try (InputStream in = new FileInputStream(tables)) {
+                return new TokenizerHandler(in);
+            } catch (IOException e) {
+                System.err.println("Could not load tokenizer tables from " + tables + ": "
+                    + e.getMessage() + ", building them instead");
+            }
+        }
+        return build();
+    }
+
+    /**
+     * Creates a new handler from the DFA graph and respective state maps, without using the
+     * singleton instance or precompiled tables.
+     * @return a newly built lexical tokenizer handler
+     */
+    public static LexicalTokenizerHandler build() {
 
         // this is where we create the DFA graph
         DFA dfa = new DFA();
@@ -293,7 +329,7 @@ class LexicalTokenizerHandler extends TokenizerHandler {
             }
             transitionOtherwise(root, trap);
         }
-        return instance = new LexicalTokenizerHandler(dfa, rollbackStates, tokenMap);
+        return new LexicalTokenizerHandler(dfa, rollbackStates, tokenMap);
     }
 
     private static State transitionOtherwise(State currentState, State res) {
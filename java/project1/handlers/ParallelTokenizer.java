@@ -0,0 +1,135 @@
+package project1.handlers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import project1.enums.TokenType;
+
+/**
+ * Tokenizes large buffers in parallel. The buffer is split into chunks at endlines, which the
+ * DFA of the handler is checked to synchronize on (see TokenizerHandler.isSynchronizing()):
+ * whether a chunk starts inside a string, a comment or a number, the token before an endline
+ * ends at that endline, so every chunk can be tokenized from the start state on its own. The
+ * chunks share the immutable tables of the handler, and their spans are concatenated in order.
+ */
+public class ParallelTokenizer {
+
+    /**
+     * Default number of characters per chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private final TokenizerHandler handler;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final boolean skipComments;
+    private final boolean splittable;
+
+    /**
+     * Constructs a parallel tokenizer that runs on the common fork-join pool.
+     */
+    public ParallelTokenizer() {
+        this(Tokenizer.getHandler(), ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE, false);
+    }
+
+    /**
+     * Constructs a parallel tokenizer.
+     * @param handler the handler whose tables are used for tokenizing
+     * @param pool the pool where chunks are tokenized
+     * @param chunkSize the minimum number of characters per chunk
+     * @param skipComments whether to leave comments out of the result
+     */
+    public ParallelTokenizer(TokenizerHandler handler,
+                             ForkJoinPool pool,
+                             int chunkSize,
+                             boolean skipComments) {
+        this.handler = handler;
+        this.pool = pool;
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.skipComments = skipComments;
+        this.splittable = handler.isSynchronizing('\n');
+    }
+
+    /**
+     * Tokenizes a String.
+     * @param program the String to tokenize
+     * @return the spans of all tokens, ending with EOF
+     */
+    public TokenSpans tokenize(String program) {
+        return tokenize(program.toCharArray(), program.length());
+    }
+
+    /**
+     * Tokenizes the first characters of a buffer. Falls back to a single chunk if the handler
+     * does not synchronize on endlines.
+     * @param buffer the buffer to tokenize
+     * @param limit the number of characters to tokenize
+     * @return the spans of all tokens into the buffer, ending with EOF
+     */
+    public TokenSpans tokenize(char[] buffer, int limit) {
+
+        // split at the first endline after every chunk size
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(0);
+        if (splittable) {
+            for (int p = chunkSize; p < limit; p += chunkSize) {
+                while (p < limit && buffer[p] != '\n')
+                    ++p;
+                if (p < limit)
+                    boundaries.add(p);
+            }
+        }
+
+        // tokenize every chunk, the last one until EOF
+        List<Callable<TokenSpans>> chunks = new ArrayList<>();
+        for (int i = 0; i < boundaries.size(); ++i) {
+            int start = boundaries.get(i);
+            int end = i + 1 < boundaries.size() ? boundaries.get(i + 1) : Integer.MAX_VALUE;
+            chunks.add(() -> tokenizeChunk(buffer, limit, start, end));
+        }
+        TokenSpans result = new TokenSpans(buffer, limit);
+        if (chunks.size() == 1) {
+            result.addAll(tokenizeChunk(buffer, limit, 0, Integer.MAX_VALUE));
+            return result;
+        }
+        try {
+            for (Future<TokenSpans> chunk : pool.invokeAll(chunks))
+                result.addAll(chunk.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while tokenizing", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to tokenize a chunk", e.getCause());
+        }
+        return result;
+    }
+
+    /**
+     * Tokenizes the tokens of a buffer that start in a given chunk.
+     * @param buffer the buffer to tokenize
+     * @param limit the number of characters to tokenize
+     * @param start the offset of the chunk
+     * @param end the offset past the chunk
+     * @return the spans of the chunk
+     */
+    private TokenSpans tokenizeChunk(char[] buffer, int limit, int start, int end) {
+        TokenSpans spans = new TokenSpans(buffer, limit);
+        Tokenizer tokenizer = new Tokenizer(buffer, limit, null, handler);
+        tokenizer.startAt(start);
+        while (true) {
+            TokenType type = tokenizer.nextSpan();
+            if (tokenizer.getSpanStart() >= end)
+                break;
+            if (type != TokenType.COMMENT || !skipComments)
+                spans.add(type, tokenizer.getSpanStart(), tokenizer.getSpanLength());
+            if (type == TokenType.EOF)
+                break;
+        }
+        return spans;
+    }
+
+}
@@ -0,0 +1,313 @@
+package project1.handlers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import generic.CounterMap;
+import generic.DFA;
+import generic.DFA.State;
+import generic.NFA;
+import project1.enums.Symbol;
+import project1.enums.TokenType;
+
+/**
+ * A tokenizer handler generated from prioritized regular expression rules instead of a hand-made
+ * DFA graph. The rules are combined into an NFA, determinized, converted to the final state and
+ * rollback model of the Tokenizer, then minimized. The generated tokenizer uses maximal munch: it
+ * returns the longest lexeme matched by any rule, and the first rule among those of that length.
+ * Spaces, tabs and endlines between tokens are skipped, and '\0' at the end of the input is EOF.
+ */
+public class RegexTokenizerHandler extends TokenizerHandler {
+
+    /**
+     * Rules for the same tokens as the default Tokenizer.
+     */
+    public static final List<LexerRule> LEXICAL_RULES = List.of(
+        new LexerRule("[0-9]+(\\.[0-9]+)?([eE][+\\-]?[0-9]+)?", TokenType.NUMBER),
+        new LexerRule("[0-9]+\\.|[0-9]+(\\.[0-9]+)?[eE][+\\-]?", TokenType.ERROR), // bad number
+        new LexerRule("[a-zA-Z][a-zA-Z0-9]*", TokenType.IDENT),
+        new LexerRule("'[^'\\n]*'|\"[^\"\\n]*\"", TokenType.STRING),
+        new LexerRule("'[^'\\n]*\\0|\"[^\"\\n]*\\0", TokenType.ERROR), // unterminated at the end
+        new LexerRule("(//|#)[^\\n]*", TokenType.COMMENT),
+        new LexerRule("\\+", TokenType.PLUS),
+        new LexerRule("-", TokenType.MINUS),
+        new LexerRule("\\*", TokenType.MULT),
+        new LexerRule("/", TokenType.DIVIDE),
+        new LexerRule("%", TokenType.MODULO),
+        new LexerRule("\\*\\*", TokenType.EXP),
+        new LexerRule("\\(", TokenType.LPAREN),
+        new LexerRule("\\)", TokenType.RPAREN),
+        new LexerRule(",", TokenType.COMMA),
+        new LexerRule("\\.", TokenType.PERIOD),
+        new LexerRule(";", TokenType.SEMICOLON),
+        new LexerRule("==", TokenType.EQUALS),
+        new LexerRule("!=", TokenType.NOT_EQUALS),
+        new LexerRule("!([^=]|\\0)", TokenType.ERROR), // '!' takes the next character with it
+        new LexerRule(">", TokenType.GREATER_THAN),
+        new LexerRule(">=", TokenType.GREATER_THAN_OR_EQUALS),
+        new LexerRule("<", TokenType.LESS_THAN),
+        new LexerRule("<=", TokenType.LESS_THAN_OR_EQUALS),
+        new LexerRule("=", TokenType.ASSIGNMENT)
+    );
+
+    /**
+     * Characters skipped by the start state.
+     */
+    public static final String SKIPPED_CHARACTERS = " \t\n";
+
+    // generated handlers, by rule list
+    private static final Map<List<LexerRule>, RegexTokenizerHandler> cache = new ConcurrentHashMap<>();
+
+    private final List<LexerRule> rules;
+
+    private RegexTokenizerHandler(List<LexerRule> rules,
+                                  int[][] dfaTable,
+                                  Set<Integer> finalStates,
+                                  Map<Integer, Integer> rollbackStates,
+                                  TokenType[] tokenMap,
+                                  int originalStateCount) {
+        super(dfaTable, characterColumns(), NFA.OTHER, symbolColumns(), 0, finalStates,
+              rollbackStates, tokenMap, originalStateCount);
+        this.rules = rules;
+    }
+
+    /**
+     * Gets the handler generated from a list of rules. Handlers are cached, so generating the same
+     * rules again returns the same handler without building it again.
+     * @param rules the rules, in order of priority
+     * @return the handler that tokenizes with these rules
+     * @throws IllegalArgumentException if a regular expression is invalid or matches the empty
+     *                                  string
+     */
+    public static RegexTokenizerHandler generate(List<LexerRule> rules) {
+        List<LexerRule> key = List.copyOf(rules);
+        RegexTokenizerHandler handler = cache.get(key);
+        if (handler == null)
+            handler = cache.computeIfAbsent(key, RegexTokenizerHandler::build);
+        return handler;
+    }
+
+    /**
+     * Getter for the rules this handler was generated from.
+     * @return the rules, in order of priority
+     */
+    public List<LexerRule> getRules() {
+        return rules;
+    }
+
+    private static RegexTokenizerHandler build(List<LexerRule> rules) {
+
+        // combine the rules, the end of the input is matched last
+        NFA nfa = new NFA();
+        for (int i = 0; i < rules.size(); ++i)
+            nfa.addRule(rules.get(i).getRegex(), i);
+        nfa.addRule("\\0", rules.size());
+        Map<State, Integer> acceptTags = new HashMap<>();
+        DFA dfa = nfa.toDFA(acceptTags);
+        State root = dfa.getStartState();
+        List<State> states = reachableStates(dfa);
+
+        Map<State, TokenType> tokenMap = new HashMap<>();
+        Map<State, Integer> rollbackStates = new HashMap<>();
+        Map<List<Object>, State> finals = new HashMap<>();
+
+        // accepting states that cannot go further end their token right away
+        for (State state : states) {
+            Integer tag = acceptTags.get(state);
+            if (tag != null && state.getTransitionMap().isEmpty()) {
+                state.setFinal(true);
+                tokenMap.put(state, tokenOf(rules, tag));
+                rollbackStates.put(state, 0);
+            }
+        }
+
+        // find the last accepting state before every other state; if it is not always the same
+        // rule at the same distance, the rollback is not fixed and the state ends with an error
+        Map<State, List<Integer>> lastAccepts = lastAccepts(root, states, acceptTags);
+
+        // characters that match nothing anymore end the token
+        for (State state : states) {
+            if (state.isFinal())
+                continue;
+            for (int symbol = 0; symbol < NFA.ALPHABET_SIZE; ++symbol) {
+                if (state.hasTransition(symbol))
+                    continue;
+                if (state == root && SKIPPED_CHARACTERS.indexOf(symbol) >= 0) {
+                    root.loop(symbol);
+                    continue;
+                }
+                TokenType type;
+                int rollback;
+                List<Integer> lastAccept = lastAccepts.get(state);
+                if (state == root) {
+                    // invalid character
+                    type = TokenType.ERROR;
+                    rollback = 0;
+                } else if (acceptTags.containsKey(state)) {
+                    // the token ends before this character
+                    type = tokenOf(rules, acceptTags.get(state));
+                    rollback = 1;
+                } else if (lastAccept != null && !lastAccept.isEmpty()) {
+                    // the token ends where the last rule matched
+                    type = tokenOf(rules, lastAccept.get(0));
+                    rollback = lastAccept.get(1) + 1;
+                } else {
+                    // nothing matched, or the last match is ambiguous
+                    type = TokenType.ERROR;
+                    rollback = 1;
+                }
+                List<Object> key = Arrays.asList(type, rollback);
+                State fin = finals.get(key);
+                if (fin == null) {
+                    fin = state.transition(symbol);
+                    fin.setFinal(true);
+                    tokenMap.put(fin, type);
+                    rollbackStates.put(fin, rollback);
+                    finals.put(key, fin);
+                } else {
+                    state.transition(symbol, fin);
+                }
+            }
+        }
+
+        // merge equivalent states
+        Map<State, State> representatives = new HashMap<>();
+        DFA minimized = dfa.minimize(state -> Arrays.asList(tokenMap.get(state),
+                                                             rollbackStates.get(state)),
+                                     true,
+                                     representatives);
+
+        // number the states, the start state first
+        CounterMap<State> stateMap = new CounterMap<>();
+        for (State state : reachableStates(minimized))
+            stateMap.get(state);
+        int[][] dfaTable = new int[stateMap.size()][NFA.ALPHABET_SIZE];
+        for (int[] row : dfaTable)
+            Arrays.fill(row, -1);
+        minimized.dfs((Integer symbol, State prevState, State nextState) ->
+            dfaTable[stateMap.get(prevState)][symbol] = stateMap.get(nextState));
+
+        TokenType[] stateTokens = new TokenType[stateMap.size()];
+        Arrays.fill(stateTokens, TokenType.ERROR);
+        Set<Integer> finalStates = new HashSet<>();
+        Map<Integer, Integer> stateRollbacks = new HashMap<>();
+        for (Map.Entry<State, State> entry : representatives.entrySet()) {
+            State state = entry.getKey();
+            if (!state.isFinal())
+                continue;
+            int stateId = stateMap.get(entry.getValue());
+            finalStates.add(stateId);
+            stateTokens[stateId] = tokenMap.get(state);
+            if (rollbackStates.get(state) != 0)
+                stateRollbacks.put(stateId, rollbackStates.get(state));
+        }
+
+        return new RegexTokenizerHandler(rules, dfaTable, finalStates, stateRollbacks,
+                                         stateTokens, representatives.size());
+    }
+
+    private static TokenType tokenOf(List<LexerRule> rules, int tag) {
+        return tag < rules.size() ? rules.get(tag).getType() : TokenType.EOF;
+    }
+
+    /**
+     * Lists the states reachable from the start state, in breadth-first order.
+     * @param dfa the DFA to traverse
+     * @return the reachable states, starting with the start state
+     */
+    private static List<State> reachableStates(DFA dfa) {
+        CounterMap<State> visited = new CounterMap<>();
+        ArrayDeque<State> queue = new ArrayDeque<>();
+        List<State> states = new ArrayList<>();
+        visited.get(dfa.getStartState());
+        queue.add(dfa.getStartState());
+        while (!queue.isEmpty()) {
+            State state = queue.poll();
+            states.add(state);
+            for (State next : state.getTransitionMap().values())
+                if (!visited.containsKey(next)) {
+                    visited.get(next);
+                    queue.add(next);
+                }
+        }
+        return states;
+    }
+
+    /**
+     * Finds, for every non-accepting state, the last accepting state on the way to it. The result
+     * maps a state to [tag, distance] if every path to it goes through an accepting state with
+     * the same tag at the same distance, to an empty list if no path does, and to null otherwise.
+     * @param root the start state
+     * @param states the reachable states
+     * @param acceptTags the tag of every accepting state
+     * @return the last accepting tag and distance of every state
+     */
+    private static Map<State, List<Integer>> lastAccepts(State root,
+                                                         List<State> states,
+                                                         Map<State, Integer> acceptTags) {
+        Map<State, List<Integer>> lastAccepts = new HashMap<>();
+        Set<State> ambiguous = new HashSet<>();
+        ArrayDeque<State> queue = new ArrayDeque<>(states);
+        lastAccepts.put(root, Collections.emptyList());
+        while (!queue.isEmpty()) {
+            State state = queue.poll();
+            List<Integer> lastAccept = lastAccepts.get(state);
+            if (!acceptTags.containsKey(state) && lastAccept == null && !ambiguous.contains(state))
+                continue; // not reached yet
+            for (State next : state.getTransitionMap().values()) {
+                if (next == root || acceptTags.containsKey(next) || ambiguous.contains(next))
+                    continue;
+                List<Integer> value;
+                if (acceptTags.containsKey(state))
+                    value = Arrays.asList(acceptTags.get(state), 1);
+                else if (ambiguous.contains(state))
+                    value = null;
+                else if (lastAccept.isEmpty())
+                    value = lastAccept;
+                else
+                    value = Arrays.asList(lastAccept.get(0), lastAccept.get(1) + 1);
+                List<Integer> previous = lastAccepts.get(next);
+                if (value != null && previous == null) {
+                    lastAccepts.put(next, value);
+                    queue.add(next);
+                } else if (value == null || !value.equals(previous)) {
+                    lastAccepts.remove(next);
+                    ambiguous.add(next);
+                    queue.add(next);
+                }
+            }
+        }
+        return lastAccepts;
+    }
+
+    private static int[] characterColumns() {
+        int[] columns = new int[128];
+        for (int ch = 0; ch < columns.length; ++ch)
+            columns[ch] = ch;
+        return columns;
+    }
+
+    /**
+     * Maps every symbol to the column of one of its characters, for printing.
+     * @return a map of symbols to columns
+     */
+    private static Map<Symbol, Integer> symbolColumns() {
+        Map<Symbol, Integer> columns = new HashMap<>();
+        for (Symbol symbol : Symbol.values()) {
+            String characters = symbol.toString();
+            if (!characters.isEmpty())
+                columns.put(symbol, (int) characters.charAt(0));
+        }
+        columns.put(Symbol.ERROR, NFA.OTHER);
+        return columns;
+    }
+
+}
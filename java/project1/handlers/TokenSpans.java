@@ -0,0 +1,108 @@
+package project1.handlers;
+
+import java.util.Arrays;
+
+import project1.enums.TokenType;
+
+/**
+ * A growable list of token spans into a shared character buffer, stored in primitive arrays.
+ */
+public class TokenSpans {
+
+    private static final TokenType[] tokenTypes = TokenType.values();
+
+    private final char[] buffer;
+    private final int limit;
+    private int size = 0;
+    private byte[] types = new byte[16];
+    private int[] starts = new int[16];
+    private int[] lengths = new int[16];
+
+    /**
+     * Constructs an empty list of spans into a buffer.
+     * @param buffer the buffer that the spans point into
+     * @param limit the number of valid characters in the buffer
+     */
+    public TokenSpans(char[] buffer, int limit) {
+        this.buffer = buffer;
+        this.limit = limit;
+    }
+
+    /**
+     * Adds a span to the end of the list.
+     * @param type the token type of the span
+     * @param start the start offset of the span
+     * @param length the length of the span
+     */
+    public void add(TokenType type, int start, int length) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        ++size;
+    }
+
+    /**
+     * Adds all spans of another list to the end of this list.
+     * @param other the list of spans to add
+     */
+    public void addAll(TokenSpans other) {
+        for (int i = 0; i < other.size; ++i)
+            add(other.getType(i), other.starts[i], other.lengths[i]);
+    }
+
+    /**
+     * Getter for the number of spans.
+     * @return the number of spans in the list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter for the token type of a span.
+     * @param index the index of the span
+     * @return the token type of the span
+     */
+    public TokenType getType(int index) {
+        return tokenTypes[types[index]];
+    }
+
+    /**
+     * Getter for the start offset of a span.
+     * @param index the index of the span
+     * @return the start offset of the span in the buffer
+     */
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    /**
+     * Getter for the length of a span.
+     * @param index the index of the span
+     * @return the length of the span
+     */
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * Materializes the lexeme of a span. Characters past the end of the buffer read as EOF.
+     * @param index the index of the span
+     * @return the lexeme of the span
+     */
+    public String getLexeme(int index) {
+        int start = starts[index];
+        int length = lengths[index];
+        int available = Math.max(0, Math.min(length, limit - start));
+        char[] lexeme = new char[length];
+        if (available > 0)
+            System.arraycopy(buffer, start, lexeme, 0, available);
+        return new String(lexeme);
+    }
+
+}
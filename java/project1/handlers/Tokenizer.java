@@ -1,10 +1,16 @@
 package project1.handlers;
 
-import java.util.Map;
-import java.util.Set;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import project1.handlers.LexicalTokenizerHandler;
 import project1.handlers.TokenizerHandler;
+import project1.enums.Position;
 import project1.enums.Symbol;
 import project1.enums.Token;
 import project1.enums.TokenType;
@@ -18,95 +24,491 @@ public class Tokenizer {
         return LexicalTokenizerHandler.getInstance();
     }
 
+    /**
+     * Builds a new handler from the lexical DFA graph, ignoring precompiled tables.
+     * @return a newly built handler
+     */
+    public static TokenizerHandler buildHandler() {
+        return LexicalTokenizerHandler.build();
+    }
+
+    /**
+     * Default size of the buffer used when streaming from a Reader.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
     char[] buffer;
     int pointer;
+    int limit; // number of valid characters in the buffer
+    private Reader reader; // source of more characters, null if the buffer holds everything
+
+    // compiled tables of the handler, cached for the inner loop
+    final int[] transitionTable;
+    final int columnCount;
+    final int[] characterColumns;
+    final int errorColumn;
+    final long[] finalStateBits;
+    final int[] rollbacks;
+    final TokenType[] tokenMap;
+    final int startState;
+
+    // ring of parsed tokens, indexed by the number of tokens parsed before them
+    private Token[] lookahead = new Token[8];
+    private long[] lookaheadPositions = new long[8]; // the position of every token in the ring
+    private long lexed = 0; // number of tokens parsed into the lookahead buffer
+    private long consumed = 0; // number of tokens returned by nextToken()
+    private long mark = -1; // value of consumed when mark() was called, -1 if not marked
+
+    // the last span parsed by nextSpan()
+    TokenType spanType;
+    int spanStart;
+    int spanLength;
+    long spanPosition = Position.START;
+
+    // newlines are counted up to lineOffset in the buffer, which is on line number line, and
+    // that line starts at lineStart, which is negative once the start was discarded from the buffer
+    private int lineOffset = 0;
+    int line = 1;
+    int lineStart = 0;
+    private long tokenPosition = Position.START; // the position of the last token of nextToken()
 
     /**
      * Constructs a tokenizer from a String buffer
      * @param buffer the String buffer to tokenize
      */
     public Tokenizer(String buffer) {
-        this.buffer = buffer.toCharArray();
+        this(buffer, getHandler());
+    }
+
+    /**
+     * Constructs a tokenizer from a String buffer that uses the compiled tables of a handler.
+     * @param buffer the String buffer to tokenize
+     * @param handler the handler whose tables are used for tokenizing
+     */
+    public Tokenizer(String buffer, TokenizerHandler handler) {
+        this(buffer.toCharArray(), buffer.length(), null, handler);
+    }
+
+    /**
+     * Constructs a tokenizer that streams characters from a Reader.
+     * @param reader the Reader to tokenize
+     */
+    public Tokenizer(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE, getHandler());
+    }
+
+    /**
+     * Constructs a tokenizer that streams UTF-8 characters from a channel.
+     * @param channel the channel to tokenize
+     */
+    public Tokenizer(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Constructs a tokenizer that streams characters from a Reader through a fixed-size buffer.
+     * The buffer is refilled whenever the tokenizer runs out of characters, keeping only the
+     * token being parsed. The buffer only grows if a single token does not fit in it.
+     * @param reader the Reader to tokenize
+     * @param bufferSize the initial size of the buffer
+     * @param handler the handler whose tables are used for tokenizing
+     */
+    public Tokenizer(Reader reader, int bufferSize, TokenizerHandler handler) {
+        this(new char[Math.max(bufferSize, 1)], 0, reader, handler);
+    }
+
+    Tokenizer(char[] buffer, int limit, Reader reader, TokenizerHandler handler) {
+        this.buffer = buffer;
+        this.limit = limit;
+        this.reader = reader;
         this.pointer = 0;
+        this.transitionTable = handler.getTransitionTable();
+        this.columnCount = handler.getColumnCount();
+        this.characterColumns = handler.getCharacterColumns();
+        this.errorColumn = handler.getErrorColumn();
+        this.finalStateBits = handler.getFinalStateBits();
+        this.rollbacks = handler.getRollbacks();
+        this.tokenMap = handler.getTokenMap();
+        this.startState = handler.getStartState();
     }
 
     /**
-     * Checks if there is a next token is not EOF.
+     * Checks if there is a next token is not EOF. The token is kept in the lookahead buffer, so
+     * it is not parsed again by nextToken().
      * @return true if the next token is not EOF
      */
     public boolean hasNextToken() {
-        int currentPointer = pointer;
-        TokenType type = nextToken().getTokenType();
-        pointer = currentPointer;
-        return type != TokenType.EOF;
+        return peek().getTokenType() != TokenType.EOF;
     }
 
     /**
-     * Parses the next token from the buffer, until a final state is reached. Note that does not
-     * append the symbols that loop in the start state to the lexeme.
+     * Gets the next token, from the lookahead buffer if it was already parsed.
      * @return the next Token along with its lexeme
      */
     public Token nextToken() {
+        if (lexed > consumed) {
+            int index = (int) (consumed++ & (lookahead.length - 1));
+            tokenPosition = lookaheadPositions[index];
+            return lookahead[index];
+        }
+        Token token = parseToken();
+        tokenPosition = spanPosition;
+        if (mark >= 0) {
+            // keep the token for reset()
+            store(token, tokenPosition);
+            ++consumed;
+        }
+        return token;
+    }
+
+    /**
+     * Getter for the position of the last token returned by nextToken(). Tokens are shared, so
+     * they do not carry their position themselves.
+     * @return the line and column where the last token starts, packed by Position
+     */
+    public long getTokenPosition() {
+        return tokenPosition;
+    }
+
+    /**
+     * Getter for the line of the last token returned by nextToken().
+     * @return the line number of the last token, starting at 1
+     */
+    public int getTokenLine() {
+        return Position.line(tokenPosition);
+    }
 
-        // initialize
-        TokenizerHandler handler = getHandler();
-        Set finalStates = handler.getFinalStates();
-        Map<Symbol, Integer> transitionMap = handler.getTransitionMap();
-        int[][] dfaTable = handler.getDfaTable();
-        int startState = handler.getStartState();
-        StringBuilder builder = new StringBuilder();
+    /**
+     * Peeks the next token without consuming it.
+     * @return the next token
+     */
+    public Token peek() {
+        return peek(0);
+    }
+
+    /**
+     * Peeks a token after the next token without consuming any. Tokens are parsed once into the
+     * lookahead buffer and returned by later calls to peek() and nextToken().
+     * @param k the number of tokens to look past, 0 for the next token
+     * @return the k-th token after the next token
+     */
+    public Token peek(int k) {
+        while (lexed <= consumed + k)
+            store(parseToken(), spanPosition);
+        return lookahead[(int) ((consumed + k) & (lookahead.length - 1))];
+    }
+
+    /**
+     * Marks the current position in the token stream. Tokens from this position on are kept
+     * until the mark is moved or cleared, so that reset() can return to it.
+     */
+    public void mark() {
+        mark = consumed;
+    }
+
+    /**
+     * Returns to the position of the last mark. The mark is kept.
+     */
+    public void reset() {
+        if (mark < 0)
+            throw new IllegalStateException("reset() without mark()");
+        consumed = mark;
+    }
+
+    /**
+     * Clears the mark, so that consumed tokens are no longer kept.
+     */
+    public void clearMark() {
+        mark = -1;
+    }
+
+    /**
+     * Adds a parsed token to the end of the lookahead buffer, growing it if every slot holds a
+     * token that is not consumed yet or is kept by the mark.
+     * @param token the parsed token
+     * @param position the position of the parsed token
+     */
+    private void store(Token token, long position) {
+        long oldest = mark >= 0 ? mark : consumed;
+        if (lexed - oldest == lookahead.length) {
+            Token[] grown = new Token[lookahead.length * 2];
+            long[] grownPositions = new long[grown.length];
+            for (long i = oldest; i < lexed; ++i) {
+                int from = (int) (i & (lookahead.length - 1));
+                grown[(int) (i & (grown.length - 1))] = lookahead[from];
+                grownPositions[(int) (i & (grown.length - 1))] = lookaheadPositions[from];
+            }
+            lookahead = grown;
+            lookaheadPositions = grownPositions;
+        }
+        int index = (int) (lexed++ & (lookahead.length - 1));
+        lookahead[index] = token;
+        lookaheadPositions[index] = position;
+    }
+
+    /**
+     * Parses the next token from the buffer, until a final state is reached. Note that does not
+     * append the symbols that loop in the start state to the lexeme. Punctuation and keyword
+     * tokens are shared instances, other tokens materialize their lexeme from the span. This
+     * bypasses the lookahead buffer.
+     * @return the next Token along with its lexeme
+     */
+    protected Token parseToken() {
+        TokenType type = nextSpan();
+        Token shared = Token.getShared(type);
+        if (shared != null && spanEquals(shared.getLexeme()))
+            return shared;
+        return new Token(type, getSpanLexeme());
+    }
+
+    /**
+     * Parses the next token from the buffer as a span, without allocating. The span is described
+     * by getSpanType(), getSpanStart() and getSpanLength(), and stays valid until the next call.
+     * When streaming, the buffer is refilled here, so the offsets of older spans are not kept.
+     * Spans bypass the lookahead buffer, so do not mix them with peeked tokens.
+     * @return the token type of the span
+     */
+    public TokenType nextSpan() {
 
         // traverse dfa states
+        int p = pointer;
+        int start = p;
         int state;
-        for (state = startState; !finalStates.contains(state); ++pointer) {
-            Symbol symbol = peekSymbol();
-            Integer symbolId = transitionMap.get(symbol);
-            if (symbol == null || symbolId == null || symbolId == -1) {
+        for (state = startState; (finalStateBits[state >>> 6] & (1L << state)) == 0; ++p) {
+            if (p >= limit && reader != null) {
+                // out of characters, keep the current span and refill the buffer
+                int shift = fill(start);
+                p -= shift;
+                start -= shift;
+            }
+            char ch = p < limit ? buffer[p] : '\0';
+            int column = ch < characterColumns.length ? characterColumns[ch] : errorColumn;
+            if (column == -1) {
                 // invalid character
-                builder.append(peekCharacter());
-                pointer++;
-                return new Token(TokenType.ERROR, builder.toString());
+                pointer = p + 1;
+                return setSpan(TokenType.ERROR, start, p + 1 - start);
             }
-            state = dfaTable[state][symbolId];
+            state = transitionTable[state * columnCount + column];
             if (state == -1) {
                 // trap state
-                pointer++;
-                return new Token(TokenType.ERROR, builder.toString());
+                pointer = p + 1;
+                return setSpan(TokenType.ERROR, start, p - start);
             }
-            if (state != startState)
-                builder.append(peekCharacter());
+            if (state == startState)
+                start = p + 1; // skipped symbols are not part of the lexeme
         }
 
-
         // rollback if needed
-        Integer rollback = handler.getRollbackStateMap().get(state);
-        if (rollback != null) {
-            for (int i = 0; i < rollback && pointer > 0; ++i) {
-                --pointer;
-                builder.deleteCharAt(builder.length() - 1);
+        for (int i = rollbacks[state]; i > 0 && p > 0; --i)
+            --p;
+        pointer = p;
+
+        // special identifiers
+        TokenType type = tokenMap[state];
+        if (type == TokenType.IDENT)
+            type = getIdentifierType(start, p - start);
+        return setSpan(type, start, p - start);
+
+    }
+
+    /**
+     * Checks if an identifier is a special identifier, comparing it in place.
+     * @param start the offset of the identifier
+     * @param length the length of the identifier
+     * @return the token type of the special identifier, TokenType.IDENT if not special
+     */
+    TokenType getIdentifierType(int start, int length) {
+        switch (length) {
+            case 2:
+                if (spanEquals(start, "IF")) return TokenType.IF;
+                break;
+            case 4:
+                if (spanEquals(start, "SQRT")) return TokenType.SQRT;
+                break;
+            case 5:
+                if (spanEquals(start, "PRINT")) return TokenType.PRINT;
+                break;
+        }
+        return TokenType.IDENT;
+    }
+
+    /**
+     * Moves the characters from a given offset to the front of the buffer and reads more
+     * characters after them. Grows the buffer if it is still full.
+     * @param keepFrom the offset of the first character to keep
+     * @return the number of characters discarded from the front of the buffer
+     */
+    private int fill(int keepFrom) {
+        discardPositions(keepFrom);
+        int remaining = limit - keepFrom;
+        System.arraycopy(buffer, keepFrom, buffer, 0, remaining);
+        limit = remaining;
+        if (limit == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        try {
+            int read = reader.read(buffer, limit, buffer.length - limit);
+            while (read == 0)
+                read = reader.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                reader.close();
+                reader = null;
+            } else {
+                limit += read;
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        return keepFrom;
+    }
 
-        // return token with lexeme
-        TokenType type = handler.getTokenMap()[state];
-        String lexeme = builder.toString();
+    TokenType setSpan(TokenType type, int start, int length) {
+        spanType = type;
+        spanStart = start;
+        spanLength = length;
+        spanPosition = positionAt(start);
+        return type;
+    }
 
-        // special identifiers
-        if (type.equals(TokenType.IDENT)) {
-            switch (lexeme) {
-                case "SQRT":
-                    type = TokenType.SQRT;
-                    break;
-                case "IF":
-                    type = TokenType.IF;
-                    break;
-                case "PRINT":
-                    type = TokenType.PRINT;
-                    break;
+    /**
+     * Gets the position of an offset in the buffer, counting the newlines since the last offset
+     * asked for. Offsets must not go backwards.
+     * @param offset the offset in the buffer
+     * @return the line and column of the offset, packed by Position
+     */
+    long positionAt(int offset) {
+        if (offset > lineOffset) {
+            countNewlines(lineOffset, Math.min(offset, limit));
+            lineOffset = offset;
+        }
+        return Position.of(line, offset - lineStart + 1);
+    }
+
+    /**
+     * Moves to an offset of the buffer, counting the positions of the spans from there as if it
+     * started the first line, so the newlines in front of it are not counted. Used to tokenize a
+     * chunk of a buffer that other tokenizers tokenize the rest of.
+     * @param offset the offset of the first character to tokenize
+     */
+    void startAt(int offset) {
+        pointer = offset;
+        lineOffset = offset;
+        lineStart = offset;
+    }
+
+    /**
+     * Counts the lines up to an offset in the buffer, before the characters in front of it are
+     * discarded, so that the offset becomes the start of the buffer.
+     * @param keepFrom the offset of the first character to keep
+     */
+    void discardPositions(int keepFrom) {
+        positionAt(keepFrom);
+        lineOffset -= keepFrom;
+        lineStart -= keepFrom;
+    }
+
+    /**
+     * Counts the newline characters in a range of the buffer, updating line and lineStart.
+     * @param from the offset of the first character
+     * @param to the offset past the last character
+     */
+    void countNewlines(int from, int to) {
+        for (int p = from; p < to; ++p) {
+            if (buffer[p] == '\n') {
+                ++line;
+                lineStart = p + 1;
             }
         }
-        return new Token(type, lexeme);
+    }
 
+    /**
+     * Getter for the position of the last span. Columns count characters, so a tab is one column.
+     * @return the line and column where the last span starts, packed by Position
+     */
+    public long getSpanPosition() {
+        return spanPosition;
+    }
+
+    /**
+     * Getter for the line of the last span.
+     * @return the line number where the last span starts, starting at 1
+     */
+    public int getSpanLine() {
+        return Position.line(spanPosition);
+    }
+
+    /**
+     * Getter for the token type of the last span.
+     * @return the token type of the last span
+     */
+    public TokenType getSpanType() {
+        return spanType;
+    }
+
+    /**
+     * Getter for the offset of the last span in the buffer.
+     * @return the start offset of the last span
+     */
+    public int getSpanStart() {
+        return spanStart;
+    }
+
+    /**
+     * Getter for the length of the last span. Note that a span may extend past the end of the
+     * buffer, where every character reads as the EOF character.
+     * @return the number of characters of the last span
+     */
+    public int getSpanLength() {
+        return spanLength;
+    }
+
+    /**
+     * Getter for the character buffer that spans point into. Only the characters before the
+     * current limit are valid.
+     * @return the character buffer
+     */
+    public char[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Getter for the number of valid characters in the buffer.
+     * @return the offset past the last valid character of the buffer
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Materializes the lexeme of the last span.
+     * @return the lexeme of the last span
+     */
+    public String getSpanLexeme() {
+        int available = Math.max(0, Math.min(spanLength, limit - spanStart));
+        if (available == spanLength)
+            return new String(buffer, spanStart, spanLength);
+        char[] lexeme = new char[spanLength]; // pad the part past the buffer with EOF
+        if (available > 0)
+            System.arraycopy(buffer, spanStart, lexeme, 0, available);
+        return new String(lexeme);
+    }
+
+    /**
+     * Checks if the last span has the same characters as a given lexeme, without allocating.
+     * @param lexeme the lexeme to compare with
+     * @return true if the lexeme of the last span is equal to the given lexeme
+     */
+    public boolean spanEquals(String lexeme) {
+        return spanLength == lexeme.length() && spanEquals(spanStart, lexeme);
+    }
+
+    boolean spanEquals(int start, String lexeme) {
+        for (int i = 0; i < lexeme.length(); ++i) {
+            int p = start + i;
+            char ch = p < limit ? buffer[p] : '\0';
+            if (ch != lexeme.charAt(i))
+                return false;
+        }
+        return true;
     }
 
     /**
@@ -114,7 +516,12 @@ public class Tokenizer {
      * @return the next character in the buffer
      */
     public char peekCharacter() {
-        if (pointer < buffer.length)
+        if (pointer >= limit && reader != null) {
+            int shift = fill(spanStart);
+            pointer -= shift;
+            spanStart -= shift;
+        }
+        if (pointer < limit)
             return buffer[pointer];
         return '\0';
     }
@@ -1,8 +1,17 @@
 package project1.handlers;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -12,7 +21,8 @@ import project1.enums.Symbol;
 import project1.enums.TokenType;
 
 /**
- * A handler class that transforms a DFA graph into a DFA table, ready for tokenizing.
+ * A handler class that transforms a DFA graph into a DFA table, ready for tokenizing. The graph
+ * is minimized first, and the flattened table merges the columns of equivalent symbols.
  */
 public class TokenizerHandler {
 
@@ -23,10 +33,48 @@ public class TokenizerHandler {
     private Map<Symbol, Integer> transitionMap; // maps symbols to their integer index
     private TokenType[] tokenMap; // maps integer states to their output tokens
 
+    // compiled tables, flattened into primitive arrays for the tokenizer's inner loop
+    private int columnCount; // number of columns (symbol classes) per state in the transition table
+    private int[] transitionTable; // flattened DFA table, indexed by state * columnCount + column
+    private int[] characterColumns; // maps ASCII characters to their column, -1 if not a column
+    private int errorColumn; // column used by characters outside of the ASCII table
+    private long[] finalStateBits; // bitset of final states
+    private int[] rollbacks; // number of characters to undo per state, 0 if none
+
+    // columns of the DFA table used by ASCII characters and by other characters
+    private int[] tableCharacterColumns;
+    private int tableErrorColumn;
+
+    // size of the tables before minimization and column compression
+    private int originalStateCount;
+    private int tableColumnCount;
+
+    // header of serialized tables
+    private static final int TABLES_MAGIC = 0x4C455854;
+    private static final int TABLES_VERSION = 2;
+
     // create a tokenizer based
-    public TokenizerHandler(DFA dfa,
-                            Map<DFA.State, Integer> rollbackStateMap,
-                            Map<DFA.State, TokenType> stateTokenMap) {
+    public TokenizerHandler(DFA graph,
+                            Map<DFA.State, Integer> graphRollbackStateMap,
+                            Map<DFA.State, TokenType> graphStateTokenMap) {
+
+        // minimize the graph, never merging states with different tokens or rollbacks; the
+        // tokenizer stops at final states, so their transitions are dropped
+        Map<DFA.State, DFA.State> representatives = new HashMap<>();
+        DFA dfa = graph.minimize(state -> Arrays.asList(graphStateTokenMap.get(state),
+                                                         graphRollbackStateMap.get(state)),
+                                 true,
+                                 representatives);
+        Map<DFA.State, Integer> rollbackStateMap = new HashMap<>();
+        Map<DFA.State, TokenType> stateTokenMap = new HashMap<>();
+        for (Map.Entry<DFA.State, DFA.State> entry : representatives.entrySet()) {
+            DFA.State state = entry.getKey();
+            if (graphRollbackStateMap.containsKey(state))
+                rollbackStateMap.put(entry.getValue(), graphRollbackStateMap.get(state));
+            if (graphStateTokenMap.containsKey(state))
+                stateTokenMap.put(entry.getValue(), graphStateTokenMap.get(state));
+        }
+        this.originalStateCount = representatives.size();
 
         CounterMap<DFA.State> stateMap = new CounterMap<>();
         CounterMap<Symbol> transitionMap = new CounterMap<>();
@@ -77,6 +125,210 @@ public class TokenizerHandler {
             dfaTable[prevStateId][transitionId] = nextStateId;
         });
 
+        // characters use the column of their symbol
+        tableCharacterColumns = new int[128];
+        for (char ch = 0; ch < tableCharacterColumns.length; ++ch)
+            tableCharacterColumns[ch] = getColumn(Symbol.fromCharacter(ch));
+        tableErrorColumn = getColumn(Symbol.ERROR);
+
+        compileTables();
+
+    }
+
+    /**
+     * Creates a tokenizer handler from an already numbered DFA table whose columns are not
+     * necessarily symbols, such as one generated from regular expressions.
+     * @param dfaTable the state/transition table, -1 for no transition
+     * @param tableCharacterColumns the column of every ASCII character, -1 if invalid
+     * @param tableErrorColumn the column of every other character
+     * @param transitionMap the column of every symbol, used for printing
+     * @param startState the start state
+     * @param finalStates the final states
+     * @param rollbackStates the number of characters to undo per final state
+     * @param tokenMap the token type of every state
+     * @param originalStateCount the number of states before minimization
+     */
+    TokenizerHandler(int[][] dfaTable,
+                     int[] tableCharacterColumns,
+                     int tableErrorColumn,
+                     Map<Symbol, Integer> transitionMap,
+                     int startState,
+                     Set<Integer> finalStates,
+                     Map<Integer, Integer> rollbackStates,
+                     TokenType[] tokenMap,
+                     int originalStateCount) {
+        this.dfaTable = dfaTable;
+        this.tableCharacterColumns = tableCharacterColumns;
+        this.tableErrorColumn = tableErrorColumn;
+        this.transitionMap = transitionMap;
+        this.startState = startState;
+        this.finalStates.addAll(finalStates);
+        this.rollbackStates.putAll(rollbackStates);
+        this.tokenMap = tokenMap;
+        this.originalStateCount = originalStateCount;
+        compileTables();
+    }
+
+    /**
+     * Creates a tokenizer handler from tables that were written by writeTables(), without
+     * building or minimizing a DFA graph.
+     * @param input the stream to read the tables from
+     * @throws IOException when the tables cannot be read or are not valid
+     */
+    public TokenizerHandler(InputStream input) throws IOException {
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        if (in.readInt() != TABLES_MAGIC || in.readInt() != TABLES_VERSION)
+            throw new IOException("not a tokenizer table file");
+
+        int numberOfStates = in.readInt();
+        originalStateCount = in.readInt();
+        startState = in.readInt();
+
+        // columns of the characters and symbols
+        int numberOfColumns = in.readInt();
+        tableCharacterColumns = new int[128];
+        for (int ch = 0; ch < tableCharacterColumns.length; ++ch)
+            tableCharacterColumns[ch] = in.readInt();
+        tableErrorColumn = in.readInt();
+        int numberOfSymbols = in.readInt();
+        transitionMap = new HashMap<>();
+        for (int j = 0; j < numberOfSymbols; ++j)
+            transitionMap.put(readEnum(in, Symbol.class), in.readInt());
+
+        // states
+        dfaTable = new int[numberOfStates][numberOfColumns];
+        tokenMap = new TokenType[numberOfStates];
+        for (int i = 0; i < numberOfStates; ++i) {
+            tokenMap[i] = readEnum(in, TokenType.class);
+            if (in.readBoolean())
+                finalStates.add(i);
+            int rollback = in.readInt();
+            if (rollback != 0)
+                rollbackStates.put(i, rollback);
+            for (int j = 0; j < numberOfColumns; ++j)
+                dfaTable[i][j] = in.readInt();
+        }
+
+        compileTables();
+    }
+
+    /**
+     * Writes the tables of this handler, to be read back with TokenizerHandler(InputStream).
+     * @param output the stream to write the tables to
+     * @throws IOException when the tables cannot be written
+     */
+    public void writeTables(OutputStream output) throws IOException {
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+        out.writeInt(TABLES_MAGIC);
+        out.writeInt(TABLES_VERSION);
+        out.writeInt(dfaTable.length);
+        out.writeInt(originalStateCount);
+        out.writeInt(startState);
+
+        // columns of the characters and symbols
+        out.writeInt(tableColumnCount);
+        for (int column : tableCharacterColumns)
+            out.writeInt(column);
+        out.writeInt(tableErrorColumn);
+        out.writeInt(transitionMap.size());
+        for (Map.Entry<Symbol, Integer> entry : transitionMap.entrySet()) {
+            out.writeUTF(entry.getKey().name());
+            out.writeInt(entry.getValue());
+        }
+
+        // states
+        for (int i = 0; i < dfaTable.length; ++i) {
+            out.writeUTF(tokenMap[i].name());
+            out.writeBoolean(finalStates.contains(i));
+            out.writeInt(rollbacks[i]);
+            for (int next : dfaTable[i])
+                out.writeInt(next);
+        }
+        out.flush();
+    }
+
+    private static <E extends Enum<E>> E readEnum(DataInputStream in, Class<E> type)
+        throws IOException {
+        String name = in.readUTF();
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("unknown " + type.getSimpleName() + " " + name, e);
+        }
+    }
+
+    /**
+     * Checks if another handler tokenizes with the same compiled tables as this handler.
+     * @param other the handler to compare with
+     * @return true if both handlers have the same compiled tables
+     */
+    public boolean hasSameTables(TokenizerHandler other) {
+        return startState == other.startState
+            && columnCount == other.columnCount
+            && errorColumn == other.errorColumn
+            && Arrays.equals(transitionTable, other.transitionTable)
+            && Arrays.equals(characterColumns, other.characterColumns)
+            && Arrays.equals(finalStateBits, other.finalStateBits)
+            && Arrays.equals(rollbacks, other.rollbacks)
+            && Arrays.equals(tokenMap, other.tokenMap);
+    }
+
+    /**
+     * Flattens the DFA table and the state/symbol maps into primitive arrays, so that the
+     * tokenizer does not need any hashing or boxing per character.
+     */
+    private void compileTables() {
+
+        int numberOfStates = dfaTable.length;
+        tableColumnCount = numberOfStates > 0 ? dfaTable[0].length : 0;
+
+        // merge columns of symbols that behave the same in every state
+        int[] columnClasses = new int[tableColumnCount];
+        Map<List<Integer>, Integer> classOfColumn = new HashMap<>();
+        for (int j = 0; j < tableColumnCount; ++j) {
+            List<Integer> column = new ArrayList<>();
+            for (int i = 0; i < numberOfStates; ++i)
+                column.add(dfaTable[i][j]);
+            Integer columnClass = classOfColumn.get(column);
+            if (columnClass == null)
+                classOfColumn.put(column, columnClass = classOfColumn.size());
+            columnClasses[j] = columnClass;
+        }
+        columnCount = classOfColumn.size();
+
+        // flattened transition table
+        transitionTable = new int[numberOfStates * columnCount];
+        for (int i = 0; i < numberOfStates; ++i)
+            for (int j = 0; j < tableColumnCount; ++j)
+                transitionTable[i * columnCount + columnClasses[j]] = dfaTable[i][j];
+
+        // dense character to column map
+        characterColumns = new int[128];
+        for (char ch = 0; ch < characterColumns.length; ++ch) {
+            int column = tableCharacterColumns[ch];
+            characterColumns[ch] = column == -1 ? -1 : columnClasses[column];
+        }
+        errorColumn = tableErrorColumn == -1 ? -1 : columnClasses[tableErrorColumn];
+
+        // final states and rollbacks
+        finalStateBits = new long[(numberOfStates + 63) >>> 6];
+        for (int state : finalStates)
+            finalStateBits[state >>> 6] |= 1L << state;
+        rollbacks = new int[numberOfStates];
+        for (Map.Entry<Integer, Integer> entry : rollbackStates.entrySet())
+            rollbacks[entry.getKey()] = entry.getValue();
+    }
+
+    /**
+     * Gets the column of a symbol without assigning a new one.
+     * @param symbol the symbol to query
+     * @return the column of the symbol, -1 if the symbol has no column
+     */
+    private int getColumn(Symbol symbol) {
+        Integer column = transitionMap.containsKey(symbol) ? transitionMap.get(symbol) : null;
+        return column != null ? column : -1;
     }
 
     /**
@@ -127,6 +379,82 @@ public class TokenizerHandler {
         return tokenMap;
     }
 
+    /**
+     * Getter for the number of columns per state of the flattened transition table. Symbols that
+     * behave the same in every state share a column.
+     * @return the number of columns
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * Getter for the flattened transition table. The next state of a given state and column is
+     * found at index state * getColumnCount() + column.
+     * @return the flattened transition table
+     */
+    public int[] getTransitionTable() {
+        return transitionTable;
+    }
+
+    /**
+     * Getter for the dense character to column map. Only ASCII characters are mapped; characters
+     * outside this array use getErrorColumn(). A column of -1 means the character is invalid.
+     * @return an array mapping characters to columns
+     */
+    public int[] getCharacterColumns() {
+        return characterColumns;
+    }
+
+    /**
+     * Getter for the column used by characters outside of getCharacterColumns().
+     * @return the column of Symbol.ERROR
+     */
+    public int getErrorColumn() {
+        return errorColumn;
+    }
+
+    /**
+     * Getter for the bitset of final states. State i is final if bit (i % 64) of word (i / 64)
+     * is set.
+     * @return the words of the final state bitset
+     */
+    public long[] getFinalStateBits() {
+        return finalStateBits;
+    }
+
+    /**
+     * Getter for the rollback array.
+     * @return an array mapping states to the number of characters to undo
+     */
+    public int[] getRollbacks() {
+        return rollbacks;
+    }
+
+    /**
+     * Checks if a character synchronizes the DFA: the start state skips it, and every other state
+     * either reaches a final state on it that does not roll back past it, or skips it too. This
+     * means that tokenizing from the position of this character in the start state gives the
+     * same tokens as tokenizing from anywhere before it, so input can be split at it.
+     * @param ch the character to check
+     * @return true if the character synchronizes the DFA
+     */
+    public boolean isSynchronizing(char ch) {
+        int column = ch < characterColumns.length ? characterColumns[ch] : errorColumn;
+        if (column == -1 || transitionTable[startState * columnCount + column] != startState)
+            return false;
+        for (int state = 0; state < tokenMap.length; ++state) {
+            if ((finalStateBits[state >>> 6] & (1L << state)) != 0)
+                continue;
+            int next = transitionTable[state * columnCount + column];
+            if (next == startState || next == -1)
+                continue;
+            if ((finalStateBits[next >>> 6] & (1L << next)) == 0 || rollbacks[next] > 1)
+                return false;
+        }
+        return true;
+    }
+
     /**
      * Pretty prints the DFA table.
      */
@@ -147,7 +475,9 @@ public class TokenizerHandler {
         }
 
         int totalNumberOfStates = dfaTable.length;
-        System.out.println("Created tokenizer: " + totalNumberOfStates + " states");
+        System.out.println("Created tokenizer: " + totalNumberOfStates + " states ("
+            + originalStateCount + " before minimization), " + getColumnCount() + " columns ("
+            + tableColumnCount + " before merging)");
         System.out.println("DFA table:");
         System.out.printf("%10s   |", "");
         for (Symbol symbol : inverseTransitionMap) {
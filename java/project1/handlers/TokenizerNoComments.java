@@ -1,6 +1,7 @@
 package project1.handlers;
 
-import project1.enums.Token;
+import java.io.Reader;
+
 import project1.enums.TokenType;
 
 public class TokenizerNoComments extends Tokenizer {
@@ -9,11 +10,15 @@ public class TokenizerNoComments extends Tokenizer {
         super(buffer);
     }
 
+    public TokenizerNoComments(Reader reader) {
+        super(reader);
+    }
+
     @Override
-    public Token nextToken() {
-        Token token = super.nextToken();
-        while (token.getTokenType().equals(TokenType.COMMENT))
-            token = super.nextToken();
-        return token;
+    public TokenType nextSpan() {
+        TokenType type = super.nextSpan();
+        while (type == TokenType.COMMENT)
+            type = super.nextSpan();
+        return type;
     }
 }
@@ -7,6 +7,8 @@ import java.util.List;
 import project2.compiler.CompileException;
 import project2.compiler.CompilerGrammar;
 import project2.compiler.Environment;
+import project2.compiler.output.DiscardSink;
+import project2.compiler.output.OutputSink;
 
 /**
  * This class hooks onto CompilerGrammar methods to print debug text.
@@ -17,6 +19,12 @@ public class CompilerGrammarWithDebug extends CompilerGrammar {
     Boolean condition = null;
     PrintStream out;
     List<String> errors = new ArrayList<>();
+    // The output printed so far, which CompilerGrammar used to bind to the variable PRINT on
+    // every print, the environment of the last print, and the environment before the assignment
+    // being compiled.
+    StringBuilder printed = new StringBuilder();
+    Environment printEnvironment = null;
+    Environment assignmentEnvironment = null;
 
     /**
      * Constructs a default CompilerGrammarWithDebug object that wraps to the System.out stream.
@@ -52,6 +60,15 @@ public class CompilerGrammarWithDebug extends CompilerGrammar {
         errors.add(message);
     }
 
+    /**
+     * Drops the messages of PRINT statements by default, since print() already writes them to the
+     * debug stream.
+     */
+    @Override
+    protected OutputSink onCreateOutputSink() {
+        return DiscardSink.INSTANCE;
+    }
+
     /**
      * Prints "output ({message})" whenever a PRINT statement is encountered.
      */
@@ -63,7 +80,15 @@ public class CompilerGrammarWithDebug extends CompilerGrammar {
             else
                 out.println("output (" + message + ")");
         }
-        return super.print(message);
+        if (printEnvironment == null) {
+            Object print = getEnvironment().getValue("PRINT");
+            if (print != null)
+                printed.append(print);
+        }
+        printed.append(message);
+        Object result = super.print(message);
+        printEnvironment = getEnvironment();
+        return result;
     }
 
     /**
@@ -71,38 +96,63 @@ public class CompilerGrammarWithDebug extends CompilerGrammar {
      * Toggles the condition flag for the current statement.
      */
     @Override
-    protected Object B() throws CompileException {
-        this.condition = (boolean) super.B();
+    protected boolean onCondition(boolean condition) {
+        this.condition = condition;
         if (condition) out.print("condition met, ");
         else out.println("condition not met");
         return condition;
     }
 
     /**
-     * Prints "computation performed ({identifier} = {result})" whenever an assignment statement
-     * is encountered.
+     * Keeps the environment before an assignment statement, to tell if it failed.
      */
     @Override
     protected Object A() throws CompileException {
-        Object result = super.A();
+        assignmentEnvironment = getEnvironment();
+        try {
+            return super.A();
+        } finally {
+            assignmentEnvironment = null;
+        }
+    }
+
+    /**
+     * Prints "computation performed ({identifier} = {result})" whenever an assignment statement
+     * is encountered. An assignment that failed shows the binding made last, which is the PRINT
+     * variable with the output so far if a PRINT statement came last, like it always has.
+     */
+    @Override
+    protected void onAssignment(String identifier, Object value) {
+        Environment environment = getEnvironment();
+        if (environment == assignmentEnvironment && environment == printEnvironment) {
+            identifier = "PRINT";
+            value = printed.toString();
+        }
         if (condition == null || condition) {
-            Environment env = getEnvironment();
-            out.printf("computation performed (%s = ", env.identifier);
-            if (env.value instanceof Double)
-                out.printf("%.2f)\n", (Double) env.value);
+            out.printf("computation performed (%s = ", identifier);
+            if (value instanceof Double)
+                out.printf("%.2f)\n", (Double) value);
             else
-                out.print(env.value + ")\n");
+                out.print(value + ")\n");
         }
-        return result;
+    }
+
+    /**
+     * Starts the PRINT variable over with every new environment.
+     */
+    @Override
+    protected Environment onCreateEnvironment() {
+        printed.setLength(0);
+        printEnvironment = null;
+        return super.onCreateEnvironment();
     }
 
     /**
      * Reset the condition flag for every statement.
      */
     @Override
-    protected Object R() throws CompileException {
+    protected void onStatement() {
         condition = null;
-        return super.R();
     }
 
 }
\ No newline at end of file
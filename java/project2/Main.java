@@ -4,12 +4,19 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.List;
 
+import project1.enums.Position;
+import project1.handlers.Tokenizer;
+import project1.handlers.TokenizerNoComments;
 import project2.compiler.CompileException;
 import project2.compiler.CompilerGrammar;
 
 public class Main {
 
+    private long statements = 0;
+    private long errors = 0;
+
     /**
      * Driver program
      */
@@ -39,64 +46,96 @@ public class Main {
         String programPath = dataFolder + programFilename;
         String debugOutPath = dataFolder + debugOutFilename;
 
-        // create compiler grammar that debugs to debug output filename
+        // stream the input file through a single tokenizer, and compile it to the debug output
+        BufferedReader bufferedReader = new BufferedReader(new FileReader(programPath));
         PrintStream debugStream = new PrintStream(debugOutPath);
-        CompilerGrammarWithDebug compiler = new CompilerGrammarWithDebug(debugStream);
+        compile(new TokenizerNoComments(bufferedReader), debugStream, System.out);
 
-        // collect all the contents of input file
-        StringBuilder buffer = new StringBuilder();
-        BufferedReader bufferedReader = new BufferedReader(new FileReader(programPath));
+        // close the streams
+        bufferedReader.close();
+        debugStream.close();
 
-        // compile for every semicolon so that we can perform line-number-based debugging
-        int startingLineNumber = 1;
-        for (int lineNumber = 1; ; lineNumber++) {
-            String line = bufferedReader.readLine();
-            int semiColon = line != null ? line.indexOf(";") : 0;
-            int hashtagComment = line != null ? line.indexOf("#") : 0;
-            int slashComment = line != null ? line.indexOf("//") : 0;
-            if (hashtagComment < 0)
-                hashtagComment = Integer.MAX_VALUE;
-            if (slashComment < 0)
-                slashComment = Integer.MAX_VALUE;
-            if (line == null || (semiColon >= 0 && semiColon < hashtagComment && semiColon < slashComment)) {
-                if (line != null)
-                    buffer.append(line.substring(0, semiColon + 1));
-                try {
-                    // try compiling this statement
-                    compiler.compile(buffer.toString());
-                } catch (CompileException ignore) {
-                    // for compiler grammar debug, exceptions are logged and not thrown
-                }
-                if (compiler.getErrors().size() > 0) {
-                    // compile error!
-                    String compileErrorMessage = "compile error on line"
-                        + (startingLineNumber == lineNumber
-                        ? " " + lineNumber
-                        : "s " + startingLineNumber + "-" + lineNumber)
-                        + " "
-                        + compiler.getErrors().toString();
-                    // print error to console and to debugStream
-                    System.out.println(compileErrorMessage);
-                    debugStream.println(compileErrorMessage);
-                    compiler.getErrors().clear();
-                }
-                startingLineNumber = lineNumber + 1;
-                buffer = new StringBuilder();
-                if (line != null)
-                    buffer.append(line.substring(semiColon + 1));
-                buffer.append('\n');
-            } else {
-                buffer.append(line).append('\n');
+    }
+
+    /**
+     * Compiles a program statement by statement, so that we can perform line-number-based
+     * debugging, and writes the debug text and the compile errors to a stream.
+     * @param tokenizer the tokenizer of the program, without comments
+     * @param debugStream the stream where the debug text and the compile errors go
+     * @param console the stream where the compile errors also go, null for none
+     */
+    public Main(Tokenizer tokenizer, PrintStream debugStream, PrintStream console) {
+        compile(tokenizer, debugStream, console);
+    }
+
+    private void compile(Tokenizer tokenizer, PrintStream debugStream, PrintStream console) {
+
+        // create compiler grammar that debugs to the debug stream
+        CompilerGrammarWithDebug compiler = new CompilerGrammarWithDebug(debugStream);
+        compiler.startCompiling(tokenizer, true);
+        int previousEndLine = 0;
+        while (true) {
+            try {
+                // try compiling the next statement
+                if (!compiler.compileStatement())
+                    break;
+                ++statements;
+            } catch (CompileException ignore) {
+                // for compiler grammar debug, exceptions are logged and not thrown
             }
-            if (line == null) {
-                break;
+            if (compiler.getErrors().size() > 0) {
+                String compileErrorMessage = compileErrorMessage(previousEndLine,
+                    compiler.getStatementPosition(), compiler.getStatementEndPosition(),
+                    compiler.getErrors());
+                // print error to console and to debugStream
+                if (console != null)
+                    console.println(compileErrorMessage);
+                debugStream.println(compileErrorMessage);
+                compiler.getErrors().clear();
+                ++errors;
             }
+            previousEndLine = Position.line(compiler.getStatementEndPosition());
         }
 
-        // close the streams
-        bufferedReader.close();
-        debugStream.close();
+    }
+
+    /**
+     * Formats the compile errors of a statement the way they are written to the debug stream.
+     * @param previousEndLine the line where the previous statement ends, 0 for the first one
+     * @param statementPosition the position of the first token of the statement
+     * @param statementEndPosition the position of the token that ends the statement
+     * @param errors the errors of the statement
+     * @return the message
+     */
+    public static String compileErrorMessage(int previousEndLine,
+                                             long statementPosition,
+                                             long statementEndPosition,
+                                             List<String> errors) {
+        // compile error! the lines since the previous statement belong to this one
+        int startingLineNumber = Math.min(previousEndLine + 1, Position.line(statementPosition));
+        int lineNumber = Position.line(statementEndPosition);
+        return "compile error on line"
+            + (startingLineNumber == lineNumber
+            ? " " + lineNumber
+            : "s " + startingLineNumber + "-" + lineNumber)
+            + " "
+            + errors.toString();
+    }
 
+    /**
+     * Getter for the number of statements compiled.
+     * @return the number of statements, including the ones with errors
+     */
+    public long getStatementCount() {
+        return statements;
+    }
+
+    /**
+     * Getter for the number of statements with compile errors.
+     * @return the number of compile errors reported
+     */
+    public long getErrorCount() {
+        return errors;
     }
 
 
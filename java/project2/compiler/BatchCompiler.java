@@ -0,0 +1,90 @@
+package project2.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Compiles many independent programs concurrently on a fork-join pool. A CompilerGrammar holds
+ * the state of the program it compiles (its tokenizer, current token, environment and output
+ * sink), so every program gets a new grammar from a factory, which acts as the context of that
+ * compilation. Only immutable state is shared between the threads: the tables of the tokenizer
+ * handler and, if given, a ProgramCache, which synchronizes itself.
+ */
+public class BatchCompiler {
+
+    private final Supplier<? extends CompilerGrammar> factory;
+    private final ForkJoinPool pool;
+    private final ProgramCache cache;
+
+    /**
+     * Constructs a batch compiler that compiles every program with a new CompilerGrammar on the
+     * common fork-join pool.
+     */
+    public BatchCompiler() {
+        this(CompilerGrammar::new, ForkJoinPool.commonPool(), null);
+    }
+
+    /**
+     * Constructs a batch compiler.
+     * @param factory creates the grammar of every program, a new one on every call
+     * @param pool the pool where programs are compiled
+     * @param cache the cache that runs programs seen before, null to compile every program
+     */
+    public BatchCompiler(Supplier<? extends CompilerGrammar> factory,
+                         ForkJoinPool pool,
+                         ProgramCache cache) {
+        this.factory = factory;
+        this.pool = pool;
+        this.cache = cache;
+    }
+
+    /**
+     * Compiles programs concurrently, each with an empty environment. An error in one program
+     * does not stop the others.
+     * @param programs the source texts of the programs
+     * @return the result of every program, in the same order as the programs
+     */
+    public List<CompileResult> compile(List<String> programs) {
+        List<Callable<CompileResult>> tasks = new ArrayList<>(programs.size());
+        for (String program : programs)
+            tasks.add(() -> compile(program));
+        List<CompileResult> results = new ArrayList<>(programs.size());
+        try {
+            for (Future<CompileResult> result : pool.invokeAll(tasks))
+                results.add(result.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while compiling", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to compile a program", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Compiles a program on the calling thread with a new grammar and an empty environment.
+     * @param program the source text of the program
+     * @return the result of the program
+     */
+    public CompileResult compile(String program) {
+        CompilerGrammar grammar = factory.get();
+        CompileException error = null;
+        try {
+            if (cache != null)
+                cache.execute(grammar, program, false);
+            else
+                grammar.compile(program, false);
+        } catch (CompileException e) {
+            error = e;
+        } catch (RuntimeException | StackOverflowError e) {
+            error = new CompileException(e.toString(), e);
+        }
+        return new CompileResult(program, grammar, error);
+    }
+
+}
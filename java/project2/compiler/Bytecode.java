@@ -0,0 +1,362 @@
+package project2.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import project1.enums.TokenType;
+import project2.compiler.ast.AssignmentStatement;
+import project2.compiler.ast.BinaryExpression;
+import project2.compiler.ast.Condition;
+import project2.compiler.ast.Expression;
+import project2.compiler.ast.ExpressionWalker;
+import project2.compiler.ast.IfStatement;
+import project2.compiler.ast.Literal;
+import project2.compiler.ast.PrintStatement;
+import project2.compiler.ast.Program;
+import project2.compiler.ast.Statement;
+import project2.compiler.ast.Temporary;
+import project2.compiler.ast.UnaryExpression;
+import project2.compiler.ast.Variable;
+import project2.compiler.ast.Visitor;
+
+/**
+ * A parsed program lowered to a compact instruction array for a stack machine, to be run with
+ * CompilerGrammar.execute(Bytecode). Variables are resolved to slots at compile time.
+ * Instructions are opcodes followed by at most one operand:
+ * NUMBER k, STRING k      push constant k
+ * LOAD s                  push the value of slot s
+ * ADD, SUBTRACT, MODULO, MULTIPLY, POWER, INVERT, NEGATE, SQRT
+ *                         apply an operator of the grammar to the values on top of the stack
+ * EQUALS, NOT_EQUALS, LESS_THAN, LESS_THAN_OR_EQUALS, GREATER_THAN, GREATER_THAN_OR_EQUALS
+ *                         compare the two values on top of the stack, set the condition
+ * TRUE, FALSE             set the condition to a constant
+ * KEEP t                  copy the value on top of the stack to temporary t
+ * REUSE t                 push the value of temporary t
+ * SKIP n                  skip the next n code words if the condition is not met
+ * STATEMENT               start a statement
+ * PRINT                   print the value on top of the stack
+ * ASSIGN s                assign the value on top of the stack to slot s
+ * The bodies of IF statements are skipped if the condition is not met, like in the grammar.
+ * Temporaries hold the values that the Optimizer computes once; they are not in the environment.
+ */
+public final class Bytecode {
+
+    public static final int NUMBER = 0;
+    public static final int STRING = 1;
+    public static final int LOAD = 2;
+    public static final int ADD = 3;
+    public static final int SUBTRACT = 4;
+    public static final int MODULO = 5;
+    public static final int MULTIPLY = 6;
+    public static final int POWER = 7;
+    public static final int INVERT = 8;
+    public static final int NEGATE = 9;
+    public static final int SQRT = 10;
+    public static final int EQUALS = 11;
+    public static final int NOT_EQUALS = 12;
+    public static final int LESS_THAN = 13;
+    public static final int LESS_THAN_OR_EQUALS = 14;
+    public static final int GREATER_THAN = 15;
+    public static final int GREATER_THAN_OR_EQUALS = 16;
+    public static final int STATEMENT = 17;
+    public static final int PRINT = 18;
+    public static final int ASSIGN = 19;
+    public static final int TRUE = 20;
+    public static final int FALSE = 21;
+    public static final int KEEP = 22;
+    public static final int REUSE = 23;
+    public static final int SKIP = 24;
+
+    private static final String[] NAMES = {
+        "NUMBER", "STRING", "LOAD", "ADD", "SUBTRACT", "MODULO", "MULTIPLY", "POWER", "INVERT",
+        "NEGATE", "SQRT", "EQUALS", "NOT_EQUALS", "LESS_THAN", "LESS_THAN_OR_EQUALS",
+        "GREATER_THAN", "GREATER_THAN_OR_EQUALS", "STATEMENT", "PRINT", "ASSIGN", "TRUE", "FALSE",
+        "KEEP", "REUSE", "SKIP"
+    };
+
+    final int[] code;
+    final double[] numbers;
+    final String[] strings;
+    final String[] variables;
+    final int temporaries;
+    final int maxStack;
+
+    private Bytecode(int[] code, double[] numbers, String[] strings, String[] variables,
+                     int temporaries, int maxStack) {
+        this.code = code;
+        this.numbers = numbers;
+        this.strings = strings;
+        this.variables = variables;
+        this.temporaries = temporaries;
+        this.maxStack = maxStack;
+    }
+
+    /**
+     * Compiles a parsed program to bytecode.
+     * @param program the program returned by CompilerGrammar.parse()
+     * @return the bytecode of the program
+     */
+    public static Bytecode compile(Program program) {
+        Compiler compiler = new Compiler();
+        try {
+            for (Statement statement : program.statements) {
+                compiler.emit(STATEMENT);
+                statement.accept(compiler);
+            }
+        } catch (CompileException e) {
+            throw new IllegalStateException(e); // the compiler does not throw
+        }
+        int[] code = new int[compiler.code.size()];
+        for (int i = 0; i < code.length; ++i)
+            code[i] = compiler.code.get(i);
+        double[] numbers = new double[compiler.numbers.size()];
+        for (int i = 0; i < numbers.length; ++i)
+            numbers[i] = compiler.numbers.get(i);
+        return new Bytecode(code,
+                            numbers,
+                            compiler.strings.toArray(new String[0]),
+                            compiler.variables.toArray(new String[0]),
+                            program.temporaries,
+                            compiler.maxStack);
+    }
+
+    /**
+     * Checks if an opcode is followed by an operand.
+     * @param opcode the opcode to check
+     * @return true if the opcode has an operand
+     */
+    public static boolean hasOperand(int opcode) {
+        return opcode == NUMBER || opcode == STRING || opcode == LOAD || opcode == ASSIGN
+            || opcode == KEEP || opcode == REUSE || opcode == SKIP;
+    }
+
+    /**
+     * Getter for the identifiers of the variable slots.
+     * @return the identifier of every slot
+     */
+    public String[] getVariables() {
+        return variables.clone();
+    }
+
+    /**
+     * Getter for the number of instructions.
+     * @return the number of instructions
+     */
+    public int size() {
+        int size = 0;
+        for (int pc = 0; pc < code.length; pc += hasOperand(code[pc]) ? 2 : 1)
+            ++size;
+        return size;
+    }
+
+    /**
+     * Lists the instructions, one per line.
+     */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        for (int pc = 0; pc < code.length; ++pc) {
+            int opcode = code[pc];
+            out.append(String.format("%4d  %s", pc, NAMES[opcode]));
+            if (opcode == NUMBER)
+                out.append(' ').append(numbers[code[++pc]]);
+            else if (opcode == STRING)
+                out.append(" '").append(strings[code[++pc]]).append('\'');
+            else if (opcode == LOAD || opcode == ASSIGN)
+                out.append(' ').append(variables[code[++pc]]);
+            else if (opcode == KEEP || opcode == REUSE)
+                out.append(" t").append(code[++pc]);
+            else if (opcode == SKIP)
+                out.append(' ').append(code[++pc]);
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Emits the instructions of statements and expressions, keeping track of the stack depth.
+     * Every node of an expression emits its instruction after the instructions of its operands.
+     */
+    private static class Compiler implements Visitor<Void> {
+
+        final ExpressionWalker walker = new ExpressionWalker();
+
+        final List<Integer> code = new ArrayList<>();
+        final List<Double> numbers = new ArrayList<>();
+        final List<String> strings = new ArrayList<>();
+        final List<String> variables = new ArrayList<>();
+        final Map<Object, Integer> constantIndex = new HashMap<>();
+        final Map<String, Integer> slots = new HashMap<>();
+        int stack;
+        int maxStack;
+
+        void emit(int opcode) {
+            code.add(opcode);
+        }
+
+        void emit(int opcode, int operand) {
+            code.add(opcode);
+            code.add(operand);
+        }
+
+        void expression(Expression expression) throws CompileException {
+            walker.start(expression);
+            while (walker.next())
+                if (!walker.isEntering())
+                    walker.node().accept(this);
+        }
+
+        void push() {
+            maxStack = Math.max(maxStack, ++stack);
+        }
+
+        int slot(String identifier) {
+            Integer slot = slots.get(identifier);
+            if (slot == null) {
+                slots.put(identifier, slot = variables.size());
+                variables.add(identifier);
+            }
+            return slot;
+        }
+
+        @Override
+        public Void visitPrint(PrintStatement node) throws CompileException {
+            expression(node.expression);
+            emit(PRINT);
+            --stack;
+            return null;
+        }
+
+        @Override
+        public Void visitAssignment(AssignmentStatement node) throws CompileException {
+            expression(node.value);
+            emit(ASSIGN, slot(node.identifier));
+            --stack;
+            return null;
+        }
+
+        @Override
+        public Void visitIf(IfStatement node) throws CompileException {
+            node.condition.accept(this);
+            emit(SKIP, 0);
+            int skip = code.size();
+            node.body.accept(this);
+            code.set(skip - 1, code.size() - skip);
+            return null;
+        }
+
+        @Override
+        public Void visitCondition(Condition node) throws CompileException {
+            if (node.isConstant()) {
+                emit(node.value ? TRUE : FALSE);
+                return null;
+            }
+            expression(node.lhs);
+            expression(node.rhs);
+            switch (node.operator) {
+                case EQUALS:
+                    emit(EQUALS);
+                    break;
+                case NOT_EQUALS:
+                    emit(NOT_EQUALS);
+                    break;
+                case LESS_THAN:
+                    emit(LESS_THAN);
+                    break;
+                case LESS_THAN_OR_EQUALS:
+                    emit(LESS_THAN_OR_EQUALS);
+                    break;
+                case GREATER_THAN:
+                    emit(GREATER_THAN);
+                    break;
+                case GREATER_THAN_OR_EQUALS:
+                    emit(GREATER_THAN_OR_EQUALS);
+                    break;
+                default:
+                    throw new IllegalArgumentException("not a relational operator: " + node.operator);
+            }
+            stack -= 2;
+            return null;
+        }
+
+        @Override
+        public Void visitBinary(BinaryExpression node) throws CompileException {
+            switch (node.operator) {
+                case PLUS:
+                    emit(ADD);
+                    break;
+                case MINUS:
+                    emit(SUBTRACT);
+                    break;
+                case MODULO:
+                    emit(MODULO);
+                    break;
+                case MULT:
+                    emit(MULTIPLY);
+                    break;
+                case EXP:
+                    emit(POWER);
+                    break;
+                default:
+                    throw new IllegalArgumentException("not a binary operator: " + node.operator);
+            }
+            --stack;
+            return null;
+        }
+
+        @Override
+        public Void visitUnary(UnaryExpression node) throws CompileException {
+            TokenType operator = node.operator;
+            if (operator == TokenType.DIVIDE)
+                emit(INVERT);
+            else if (operator == TokenType.MINUS)
+                emit(NEGATE);
+            else if (operator == TokenType.SQRT)
+                emit(SQRT);
+            else
+                throw new IllegalArgumentException("not a unary operator: " + operator);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteral(Literal node) {
+            Integer index = constantIndex.get(node.value);
+            if (node.value instanceof Double) {
+                if (index == null) {
+                    constantIndex.put(node.value, index = numbers.size());
+                    numbers.add((Double) node.value);
+                }
+                emit(NUMBER, index);
+            } else {
+                if (index == null) {
+                    constantIndex.put(node.value, index = strings.size());
+                    strings.add((String) node.value);
+                }
+                emit(STRING, index);
+            }
+            push();
+            return null;
+        }
+
+        @Override
+        public Void visitVariable(Variable node) {
+            emit(LOAD, slot(node.identifier));
+            push();
+            return null;
+        }
+
+        @Override
+        public Void visitTemporary(Temporary node) throws CompileException {
+            if (node.value != null) {
+                emit(KEEP, node.index); // the value is on top of the stack
+            } else {
+                emit(REUSE, node.index);
+                push();
+            }
+            return null;
+        }
+    }
+
+}
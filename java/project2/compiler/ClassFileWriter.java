@@ -0,0 +1,437 @@
+package project2.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A minimal writer for class files, just enough for the classes generated by JitCompiler: a
+ * constant pool, a default constructor, and methods with straight-line code, forward branches and
+ * one catch-all exception handler. Class files are written in version 49, which the JVM verifies
+ * by type inference, so no stack map frames are needed and code is emitted in one pass.
+ */
+final class ClassFileWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int DCONST_0 = 0x0e;
+    static final int DCONST_1 = 0x0f;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int DALOAD = 0x31;
+    static final int ISTORE = 0x36;
+    static final int DSTORE = 0x39;
+    static final int ASTORE = 0x3a;
+    static final int DASTORE = 0x52;
+    static final int BASTORE = 0x54;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP2 = 0x5c;
+    static final int DADD = 0x63;
+    static final int DMUL = 0x6b;
+    static final int DDIV = 0x6f;
+    static final int DREM = 0x73;
+    static final int DNEG = 0x77;
+    static final int LCMP = 0x94;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int GOTO = 0xa7;
+    static final int RETURN = 0xb1;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int ATHROW = 0xbf;
+    static final int WIDE = 0xc4;
+
+    private static final int VERSION = 49;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int methodCount = 0;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+
+    /**
+     * Creates a public final class with a public default constructor.
+     * @param name the internal name of the class, e.g. project2/compiler/Foo
+     * @param superName the internal name of the superclass
+     * @param interfaceNames the internal names of the implemented interfaces
+     */
+    ClassFileWriter(String name, String superName, String... interfaceNames) {
+        thisClass = classConstant(name);
+        superClass = classConstant(superName);
+        interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; ++i)
+            interfaces[i] = classConstant(interfaceNames[i]);
+
+        Code constructor = new Code(1);
+        constructor.load(ALOAD, 0);
+        constructor.invoke(INVOKESPECIAL, superName, "<init>", "()V", -1);
+        constructor.op(RETURN, 0);
+        addMethod(ACC_PUBLIC, "<init>", "()V", constructor);
+    }
+
+    /**
+     * Adds a method to the class.
+     * @param access the access flags of the method
+     * @param name the name of the method
+     * @param descriptor the descriptor of the method
+     * @param code the code of the method
+     */
+    void addMethod(int access, String name, String descriptor, Code code) {
+        try {
+            methods.writeShort(access);
+            methods.writeShort(utf8(name));
+            methods.writeShort(utf8(descriptor));
+            methods.writeShort(1); // attributes
+            methods.writeShort(utf8("Code"));
+            int handlers = code.handler < 0 ? 0 : 1;
+            methods.writeInt(12 + code.length + handlers * 8);
+            methods.writeShort(code.maxStack);
+            methods.writeShort(code.maxLocals);
+            methods.writeInt(code.length);
+            methods.write(code.bytes, 0, code.length);
+            methods.writeShort(handlers);
+            if (handlers > 0) {
+                methods.writeShort(code.tryStart);
+                methods.writeShort(code.handler);
+                methods.writeShort(code.handler);
+                methods.writeShort(0); // any exception
+            }
+            methods.writeShort(0); // code attributes
+            ++methodCount;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the class file.
+     * @return the bytes of the class file
+     */
+    byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int index : interfaces)
+                out.writeShort(index);
+            out.writeShort(0); // fields
+            out.writeShort(methodCount);
+            methodBytes.writeTo(out);
+            out.writeShort(0); // class attributes
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int utf8(String value) {
+        return constant("U" + value, 1, CONSTANT_UTF8, out -> out.writeUTF(value));
+    }
+
+    private int classConstant(String name) {
+        int nameIndex = utf8(name);
+        return constant("C" + name, 1, CONSTANT_CLASS, out -> out.writeShort(nameIndex));
+    }
+
+    private int stringConstant(String value) {
+        int valueIndex = utf8(value);
+        return constant("S" + value, 1, CONSTANT_STRING, out -> out.writeShort(valueIndex));
+    }
+
+    private int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return constant("D" + bits, 2, CONSTANT_DOUBLE, out -> out.writeLong(bits));
+    }
+
+    private int methodConstant(String owner, String name, String descriptor) {
+        int classIndex = classConstant(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        String nameAndTypeKey = "N" + name + " " + descriptor;
+        int nameAndType = constant(nameAndTypeKey, 1, CONSTANT_NAME_AND_TYPE, out -> {
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return constant("M" + owner + "." + name + descriptor, 1, CONSTANT_METHODREF, out -> {
+            out.writeShort(classIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private interface ConstantBody {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Adds a constant to the pool unless an equal constant was already added.
+     * @param key the key of the constant, unique across constant kinds
+     * @param slots the number of pool entries taken by the constant
+     * @param tag the tag of the constant
+     * @param body writes the constant after its tag
+     * @return the index of the constant
+     */
+    private int constant(String key, int slots, int tag, ConstantBody body) {
+        Integer index = constants.get(key);
+        if (index != null)
+            return index;
+        try {
+            pool.writeByte(tag);
+            body.write(pool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        index = poolCount;
+        poolCount += slots;
+        if (poolCount > 0xffff)
+            throw new IllegalStateException("constant pool too large");
+        constants.put(key, index);
+        return index;
+    }
+
+    /**
+     * The code of one method, with the maximum stack depth tracked as instructions are emitted.
+     * Branches are emitted with branch() and patched with bind() once the target is reached.
+     */
+    final class Code {
+
+        private byte[] bytes = new byte[256];
+        private int length = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals;
+        private int tryStart = 0;
+        private int handler = -1;
+
+        /**
+         * Creates empty code.
+         * @param maxLocals the number of local variable slots, including the parameters
+         */
+        Code(int maxLocals) {
+            this.maxLocals = maxLocals;
+        }
+
+        /**
+         * Getter for the number of bytes of code.
+         * @return the length of the code
+         */
+        int length() {
+            return length;
+        }
+
+        /**
+         * Emits an instruction without operands.
+         * @param opcode the opcode of the instruction
+         * @param stackDelta the number of stack slots pushed minus the number popped
+         */
+        void op(int opcode, int stackDelta) {
+            u1(opcode);
+            adjustStack(stackDelta);
+        }
+
+        /**
+         * Adjusts the tracked stack depth, e.g. when paths with different depths join.
+         * @param stackDelta the number of stack slots to add
+         */
+        void adjustStack(int stackDelta) {
+            stack += stackDelta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        /**
+         * Emits a load instruction for a local variable.
+         * @param opcode ILOAD, DLOAD or ALOAD
+         * @param local the index of the local variable
+         */
+        void load(int opcode, int local) {
+            local(opcode, local);
+            adjustStack(opcode == DLOAD ? 2 : 1);
+        }
+
+        /**
+         * Emits a store instruction for a local variable.
+         * @param opcode ISTORE, DSTORE or ASTORE
+         * @param local the index of the local variable
+         */
+        void store(int opcode, int local) {
+            local(opcode, local);
+            adjustStack(opcode == DSTORE ? -2 : -1);
+        }
+
+        private void local(int opcode, int local) {
+            maxLocals = Math.max(maxLocals, local + (opcode == DLOAD || opcode == DSTORE ? 2 : 1));
+            if (local <= 0xff) {
+                u1(opcode);
+                u1(local);
+            } else {
+                u1(WIDE);
+                u1(opcode);
+                u2(local);
+            }
+        }
+
+        /**
+         * Pushes an int constant.
+         * @param value the constant to push
+         */
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                u1(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(SIPUSH);
+                u2(value);
+            } else {
+                throw new IllegalArgumentException("int constant too large: " + value);
+            }
+            adjustStack(1);
+        }
+
+        /**
+         * Pushes a double constant.
+         * @param value the constant to push
+         */
+        void pushDouble(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            if (bits == 0L) {
+                u1(DCONST_0);
+            } else if (value == 1.0) {
+                u1(DCONST_1);
+            } else {
+                u1(LDC2_W);
+                u2(doubleConstant(value));
+            }
+            adjustStack(2);
+        }
+
+        /**
+         * Pushes a String constant.
+         * @param value the constant to push
+         */
+        void pushString(String value) {
+            int index = stringConstant(value);
+            if (index <= 0xff) {
+                u1(LDC);
+                u1(index);
+            } else {
+                u1(LDC_W);
+                u2(index);
+            }
+            adjustStack(1);
+        }
+
+        /**
+         * Emits a method call.
+         * @param opcode INVOKEVIRTUAL, INVOKESPECIAL or INVOKESTATIC
+         * @param owner the internal name of the class declaring the method
+         * @param name the name of the method
+         * @param descriptor the descriptor of the method
+         * @param stackDelta the number of stack slots pushed minus the number popped
+         */
+        void invoke(int opcode, String owner, String name, String descriptor, int stackDelta) {
+            u1(opcode);
+            u2(methodConstant(owner, name, descriptor));
+            adjustStack(stackDelta);
+        }
+
+        /**
+         * Emits a forward branch to be patched with bind().
+         * @param opcode the branch opcode, e.g. IFEQ or GOTO
+         * @param stackDelta the number of stack slots popped by the branch, negated
+         * @return the position of the branch
+         */
+        int branch(int opcode, int stackDelta) {
+            int position = length;
+            u1(opcode);
+            u2(0);
+            adjustStack(stackDelta);
+            return position;
+        }
+
+        /**
+         * Makes a branch jump to the current position.
+         * @param branch the position returned by branch()
+         */
+        void bind(int branch) {
+            int offset = length - branch;
+            if (offset > Short.MAX_VALUE)
+                throw new IllegalStateException("branch too far: " + offset);
+            bytes[branch + 1] = (byte) (offset >> 8);
+            bytes[branch + 2] = (byte) offset;
+        }
+
+        /**
+         * Marks the start of the code covered by the exception handler.
+         */
+        void startTry() {
+            tryStart = length;
+        }
+
+        /**
+         * Starts a handler for any exception thrown by the code emitted since startTry(). The
+         * exception is on the stack when the handler starts.
+         */
+        void startHandler() {
+            handler = length;
+            stack = 0;
+            adjustStack(1);
+        }
+
+        private void u1(int value) {
+            if (length == bytes.length)
+                bytes = Arrays.copyOf(bytes, length * 2);
+            bytes[length++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+    }
+
+}
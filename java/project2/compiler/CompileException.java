@@ -1,13 +1,45 @@
 package project2.compiler;
 
+import project1.enums.Position;
+
 public class CompileException extends Exception {
 
+    private final long position;
+
     public CompileException(String message) {
-        super(message);
+        this(message, 0);
     }
 
     public CompileException(String message, Throwable error) {
         super(message, error);
+        this.position = 0;
+    }
+
+    /**
+     * Constructs an exception for an error at a position in the source.
+     * @param message the error message
+     * @param position the line and column of the token where the error was found, packed by
+     *                 Position, 0 if unknown
+     */
+    public CompileException(String message, long position) {
+        super(message);
+        this.position = position;
+    }
+
+    /**
+     * Getter for the position of the error.
+     * @return the line and column where the error was found, packed by Position, 0 if unknown
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Getter for the line of the error.
+     * @return the line number where the error was found, 0 if unknown
+     */
+    public int getLine() {
+        return Position.line(position);
     }
 
 }
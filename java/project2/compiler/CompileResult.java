@@ -0,0 +1,77 @@
+package project2.compiler;
+
+import project2.compiler.output.CollectorSink;
+import project2.compiler.output.OutputSink;
+
+/**
+ * The result of compiling one program of a batch with BatchCompiler: the grammar that compiled
+ * it, with its environment and output sink, and the error that stopped it, if any.
+ */
+public class CompileResult {
+
+    private final String program;
+    private final CompilerGrammar grammar;
+    private final CompileException error;
+
+    CompileResult(String program, CompilerGrammar grammar, CompileException error) {
+        this.program = program;
+        this.grammar = grammar;
+        this.error = error;
+    }
+
+    /**
+     * Getter for the source text of the program.
+     * @return the compiled program
+     */
+    public String getProgram() {
+        return program;
+    }
+
+    /**
+     * Getter for the grammar that compiled the program, e.g. to get the errors logged by a
+     * CompilerGrammarWithDebug. It is no longer used by the batch.
+     * @return the grammar of the program
+     */
+    public CompilerGrammar getGrammar() {
+        return grammar;
+    }
+
+    /**
+     * Getter for the environment after the program stopped.
+     * @return the environment of the grammar of the program
+     */
+    public Environment getEnvironment() {
+        return grammar.getEnvironment();
+    }
+
+    /**
+     * Checks if the program compiled without errors.
+     * @return true if no CompileException was thrown
+     */
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    /**
+     * Getter for the error that stopped the program. Other exceptions thrown by the grammar are
+     * wrapped as its cause.
+     * @return the error, null if the program compiled without errors
+     */
+    public CompileException getError() {
+        return error;
+    }
+
+    /**
+     * Gets the messages printed by the program: the text of the sink if the grammar collects its
+     * output, otherwise the String variable named "PRINT", like the PrintVariableSink defines.
+     * @return the output of the program, empty if there is none
+     */
+    public String getOutput() {
+        OutputSink sink = grammar.getOutputSink();
+        if (sink instanceof CollectorSink)
+            return ((CollectorSink) sink).getText();
+        Object print = grammar.getEnvironment().getValue("PRINT");
+        return print instanceof String ? (String) print : "";
+    }
+
+}
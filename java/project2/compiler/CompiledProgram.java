@@ -0,0 +1,42 @@
+package project2.compiler;
+
+/**
+ * A program compiled by JitCompiler, with the identifiers of its variable slots.
+ */
+final class CompiledProgram {
+
+    private final JitCompiler.Code code;
+    private final String[] variables;
+
+    CompiledProgram(JitCompiler.Code code, String[] variables) {
+        this.code = code;
+        this.variables = variables;
+    }
+
+    /**
+     * Runs the program if all its variables are bound to numbers. The assigned variables are
+     * defined in the environment after the program stops, like in the VirtualMachine.
+     * @param grammar the grammar whose environment and hooks are used
+     * @return false if the program did not run because a variable is bound to a String
+     */
+    boolean run(CompilerGrammar grammar) {
+        double[] slots = new double[variables.length];
+        for (int slot = 0; slot < variables.length; ++slot) {
+            Object value = grammar.lookup(variables[slot]);
+            if (!(value instanceof Double))
+                return false;
+            slots[slot] = (Double) value;
+        }
+        boolean[] assigned = new boolean[variables.length];
+        try {
+            code.run(grammar, slots, assigned);
+        } finally {
+            for (int slot = 0; slot < variables.length; ++slot)
+                if (assigned[slot])
+                    grammar.define(variables[slot], slots[slot]);
+            grammar.flushPrintVariable();
+        }
+        return true;
+    }
+
+}
@@ -1,9 +1,28 @@
 package project2.compiler;
 
+import java.util.Arrays;
+
 import project1.enums.Token;
 import project1.enums.TokenType;
 import project1.handlers.Tokenizer;
 import project1.handlers.TokenizerNoComments;
+import project2.compiler.ast.AssignmentStatement;
+import project2.compiler.ast.AstParser;
+import project2.compiler.ast.BinaryExpression;
+import project2.compiler.ast.Condition;
+import project2.compiler.ast.Expression;
+import project2.compiler.ast.ExpressionWalker;
+import project2.compiler.ast.IfStatement;
+import project2.compiler.ast.Literal;
+import project2.compiler.ast.PrintStatement;
+import project2.compiler.ast.Program;
+import project2.compiler.ast.Statement;
+import project2.compiler.ast.Temporary;
+import project2.compiler.ast.UnaryExpression;
+import project2.compiler.ast.Variable;
+import project2.compiler.ast.Visitor;
+import project2.compiler.output.OutputSink;
+import project2.compiler.output.PrintVariableSink;
 
 /**
  * An LL1 grammar parser with environment. This compiler DOES NOT allow booleans to be assigned to
@@ -18,16 +37,25 @@ import project1.handlers.TokenizerNoComments;
  * F -> G | G * F | G / F
  * G -> U | /U
  * U -> X | -X
- * X -> P | P ** U
+ * X -> P | P ** X
  * P -> D | (E)
  * D -> IDENT | NUMBER | STRING | SQRT(E)
+ *
+ * A grammar holds the state of the program it compiles, so it must be used by one thread at a
+ * time. BatchCompiler compiles programs concurrently, with a grammar per program.
  */
 public class CompilerGrammar {
 
     /**
-     * Captures the environment of the grammar parser
+     * Captures the environment of the grammar parser. You can choose the implementation by
+     * overriding the onCreateEnvironment() method.
+     */
+    private Environment environment = null;
+    /**
+     * Where the messages of PRINT statements go. You can choose the sink by overriding the
+     * onCreateOutputSink() method or with setOutputSink().
      */
-    private Environment environment = new Environment();
+    private OutputSink outputSink = null;
     /**
      * The currently used tokenizer for this compiler grammar. You can instantiate this by
      * overriding the onCreateTokenizer() method.
@@ -39,12 +67,53 @@ public class CompilerGrammar {
      */
     private Token token;
 
+    /**
+     * The positions of the first and last token of the statement last compiled by
+     * compileStatement(), packed by Position.
+     */
+    private long statementPosition;
+    private long statementEndPosition;
+
+    /**
+     * Parses the expressions of the grammar symbols, and applies their operators to the operand
+     * stack of E(). Like in VirtualMachine, numbers stay unboxed in operandNumbers, and operands
+     * holds the other values, null for numbers. The stacks are kept for the next expressions.
+     */
+    private final ExpressionParser expressions = new Expressions();
+    private double[] operandNumbers = new double[16];
+    private Object[] operands = new Object[16];
+    private int operandCount = 0;
+
+    /**
+     * Flag if the grammar symbols only check the syntax, without evaluating anything or calling
+     * the hooks, e.g. for the body of an IF statement whose condition is not met.
+     */
+    private boolean parseOnly = false;
+
+    /**
+     * The evaluator used by execute() for parsed programs.
+     */
+    private final Evaluator evaluator = new Evaluator();
+
+    /**
+     * Checks if the grammar symbols only check the syntax. In this mode, they report syntax
+     * errors as usual, but they evaluate nothing and return null instead of values, so that
+     * grammar symbols overridden by subclasses should not have effects either.
+     *
+     * @return true while the body of an IF statement whose condition is not met is parsed
+     */
+    protected boolean isParseOnly() {
+        return parseOnly;
+    }
+
     /**
      * Gets the current working environment for this compiler.
      *
      * @return the current working environment
      */
     public Environment getEnvironment() {
+        if (environment == null)
+            environment = onCreateEnvironment();
         return environment;
     }
 
@@ -57,6 +126,26 @@ public class CompilerGrammar {
         this.environment = environment;
     }
 
+    /**
+     * Gets the sink that receives the messages of PRINT statements.
+     *
+     * @return the current output sink
+     */
+    public OutputSink getOutputSink() {
+        if (outputSink == null)
+            outputSink = onCreateOutputSink();
+        return outputSink;
+    }
+
+    /**
+     * Sets the sink that receives the messages of PRINT statements.
+     *
+     * @param outputSink the new output sink
+     */
+    public void setOutputSink(OutputSink outputSink) {
+        this.outputSink = outputSink;
+    }
+
     /**
      * Defines and binds a value to an identifier for the current working environment.
      *
@@ -78,13 +167,36 @@ public class CompilerGrammar {
         return new TokenizerNoComments(program);
     }
 
+    /**
+     * Hook method for creating an empty environment, when the compiler starts and whenever
+     * bindings are not kept. By default, this constructs a SlotEnvironment object, so lookups
+     * take constant time in long running programs.
+     *
+     * @return the empty Environment object to be used by this compiler grammar
+     */
+    protected Environment onCreateEnvironment() {
+        return new SlotEnvironment();
+    }
+
+    /**
+     * Hook method for creating the output sink, the first time something is printed. By default,
+     * this constructs a PrintVariableSink object, which appends to the String variable named
+     * "PRINT" in the environment.
+     *
+     * @return the OutputSink object to be used by this compiler grammar
+     */
+    protected OutputSink onCreateOutputSink() {
+        return new PrintVariableSink(this);
+    }
+
     /**
      * Hook that handles what happens when an error was thrown during compilation of a grammar.
+     * The position of the error is given by getTokenPosition().
      *
      * @param message the error message
      */
     protected void onError(String message) throws CompileException {
-        throw new CompileException(message);
+        throw new CompileException(message, getTokenPosition());
     }
 
     /**
@@ -109,10 +221,162 @@ public class CompilerGrammar {
     public void compile(String program, boolean keepBindings) throws CompileException {
         this.tokenizer = onCreateTokenizer(program);
         if (!keepBindings)
-            setEnvironment(new Environment());
-        // start with the first token
+            setEnvironment(onCreateEnvironment());
+        try {
+            // start with the first token
+            consumeNextToken();
+            S();
+        } finally {
+            flushPrintVariable();
+        }
+    }
+
+    /**
+     * Starts compiling a program from a tokenizer one statement at a time, with
+     * compileStatement(). This lets a driver stream a file through a single tokenizer and handle
+     * the errors of every statement separately.
+     *
+     * @param tokenizer    the tokenizer of the program to be compiled
+     * @param keepBindings flag if previously compiled environment should be kept or not
+     */
+    public void startCompiling(Tokenizer tokenizer, boolean keepBindings) {
+        this.tokenizer = tokenizer;
+        if (!keepBindings)
+            setEnvironment(onCreateEnvironment());
+    }
+
+    /**
+     * Compiles the next statement of the program given to startCompiling(), including its
+     * semicolon. If the statement does not end with a semicolon, the tokens up to the next
+     * semicolon are skipped without reporting more errors, so that the next statement compiles
+     * on its own. The output of a PrintVariableSink is bound once the end of the program is read.
+     *
+     * @return false if there are no more statements
+     * @throws CompileException if the statement compiled while generating errors
+     */
+    public boolean compileStatement() throws CompileException {
         consumeNextToken();
-        S();
+        statementPosition = tokenizer.getTokenPosition();
+        if (expect(TokenType.EOF, false)) {
+            flushPrintVariable();
+            return false;
+        }
+        R();
+        if (!expect(TokenType.SEMICOLON, false)) {
+            onError("S: invalid statement or missing semicolon");
+            while (token.getTokenType() != TokenType.SEMICOLON
+                && token.getTokenType() != TokenType.EOF)
+                token = tokenizer.nextToken();
+        }
+        statementEndPosition = tokenizer.getTokenPosition();
+        return true;
+    }
+
+    /**
+     * Getter for the position where the statement last compiled by compileStatement() starts.
+     *
+     * @return the line and column of the first token of the statement, packed by Position
+     */
+    public long getStatementPosition() {
+        return statementPosition;
+    }
+
+    /**
+     * Getter for the position where the statement last compiled by compileStatement() ends.
+     *
+     * @return the line and column of the semicolon of the statement, or of the end of the
+     * program, packed by Position
+     */
+    public long getStatementEndPosition() {
+        return statementEndPosition;
+    }
+
+    /**
+     * Parses a program into a syntax tree without running it, so that it can be run many times
+     * with execute(). Unlike compile(), parsing stops at the first error and calls no hooks, so
+     * callers that need the error handling of compile() can fall back to it.
+     *
+     * @param program the program to be tokenized and parsed
+     * @return the parsed program
+     * @throws CompileException if the program has a lexical or syntax error
+     */
+    public Program parse(String program) throws CompileException {
+        return new AstParser(onCreateTokenizer(program)).parse();
+    }
+
+    /**
+     * Runs a parsed program, keeping the environment from previously run programs. Internally
+     * calls the method execute(program, true).
+     *
+     * @param program the program returned by parse()
+     * @throws CompileException if the program generated errors while running
+     */
+    public void execute(Program program) throws CompileException {
+        execute(program, true);
+    }
+
+    /**
+     * Runs a parsed program. The statements are evaluated in the same order and with the same
+     * hooks as compile() would, so both give the same results.
+     *
+     * @param program      the program returned by parse()
+     * @param keepBindings flag if previously compiled environment should be kept or not
+     * @throws CompileException if the program generated errors while running
+     */
+    public void execute(Program program, boolean keepBindings) throws CompileException {
+        tokenizer = null;
+        if (!keepBindings)
+            setEnvironment(onCreateEnvironment());
+        evaluator.start(program);
+        try {
+            for (Statement statement : program.statements) {
+                onStatement();
+                statement.accept(evaluator);
+            }
+        } finally {
+            flushPrintVariable();
+        }
+    }
+
+    /**
+     * Runs a program compiled to bytecode, keeping the environment from previously run programs.
+     * Internally calls the method execute(bytecode, true).
+     *
+     * @param bytecode the program returned by Bytecode.compile()
+     * @throws CompileException if the program generated errors while running
+     */
+    public void execute(Bytecode bytecode) throws CompileException {
+        execute(bytecode, true);
+    }
+
+    /**
+     * Runs a program compiled to bytecode. The hooks are called like with execute(Program), but
+     * arithmetic on numbers is done without calling the operator methods, and the environment is
+     * only read before and written after the whole program runs.
+     *
+     * @param bytecode     the program returned by Bytecode.compile()
+     * @param keepBindings flag if previously compiled environment should be kept or not
+     * @throws CompileException if the program generated errors while running
+     */
+    public void execute(Bytecode bytecode, boolean keepBindings) throws CompileException {
+        tokenizer = null;
+        if (!keepBindings)
+            setEnvironment(onCreateEnvironment());
+        try {
+            new VirtualMachine(this, bytecode).run();
+        } finally {
+            flushPrintVariable();
+        }
+    }
+
+    /**
+     * Binds the String variable named "PRINT" to the messages printed by the program that ran,
+     * if the grammar prints to a PrintVariableSink, which appends to the variable only when it is
+     * flushed.
+     */
+    void flushPrintVariable() {
+        if (outputSink instanceof PrintVariableSink)
+            outputSink.flush();
     }
 
     /**
@@ -124,6 +388,16 @@ public class CompilerGrammar {
         return token;
     }
 
+    /**
+     * Getter for the position of the current token. Errors found while running a parsed program
+     * have no position, since syntax trees and bytecode do not keep them.
+     *
+     * @return the line and column of the current token, packed by Position, 0 if not compiling
+     */
+    protected long getTokenPosition() {
+        return tokenizer != null ? tokenizer.getTokenPosition() : 0;
+    }
+
     /**
      * Consumes the current token and assigns the next token from the tokenizer.
      */
@@ -162,20 +436,48 @@ public class CompilerGrammar {
 
     /**
      * Handles what happens when the PRINT() method was called by a compiled program. By default,
-     * this method appends to the String variable named "PRINT" in the environment. You can override
-     * this method in a subclass to hook what actually happens when PRINT() is called. Note that
-     * according to the specs, all statements must return something. By default, this method returns
-     * the message.
+     * this method hands the message to the output sink, which appends to the String variable
+     * named "PRINT" in the environment once the program has run, unless another sink was set. You can override this method
+     * in a subclass to hook what actually happens when PRINT() is called. Note that according to
+     * the specs, all statements must return something. By default, this method returns the
+     * message.
      *
      * @param message the message to print
      */
     protected Object print(Object message) {
-        Object print = getEnvironment().getValue("PRINT");
-        if (print == null) print = "";
-        define("PRINT", (String) print + message);
+        getOutputSink().print(message);
         return message;
     }
 
+    /**
+     * Hook called at the start of every statement, before anything in the statement is evaluated.
+     * Does nothing by default.
+     */
+    protected void onStatement() {
+    }
+
+    /**
+     * Hook called whenever the condition of an IF statement is evaluated. By default, this method
+     * returns the condition as is.
+     *
+     * @param condition the result of the condition
+     * @return the condition used by the IF statement
+     */
+    protected boolean onCondition(boolean condition) {
+        return condition;
+    }
+
+    /**
+     * Hook called at the end of every assignment statement that is carried out. Assignments under
+     * an IF whose condition is not met are only parsed, so the hook is not called for them. Does
+     * nothing by default.
+     *
+     * @param identifier the identifier bound last in the current environment
+     * @param value      the value bound to that identifier
+     */
+    protected void onAssignment(String identifier, Object value) {
+    }
+
     /**
      * The main entry point of the compiler program. Essentially collects all semi-colon statements.
      * According to the project specs, S() must return something so it returns an Object by default.
@@ -186,13 +488,13 @@ public class CompilerGrammar {
      * @return an Object representing the list of statements
      */
     protected Object S() throws CompileException {
-        if (expect(TokenType.EOF))
-            return null;
-        R();
-        if (!expect(TokenType.SEMICOLON))
-            onError("S: invalid statement or missing semicolon");
-        else
-            S();
+        while (!expect(TokenType.EOF)) {
+            R();
+            if (!expect(TokenType.SEMICOLON)) {
+                onError("S: invalid statement or missing semicolon");
+                break;
+            }
+        }
         return null;
     }
 
@@ -231,39 +533,39 @@ public class CompilerGrammar {
      */
     protected Object R() throws CompileException {
 
-        if (expect(TokenType.PRINT))
-            return print(expectWrappedExpression("R1", "R2", "PRINT"));
+        if (!parseOnly)
+            onStatement();
+
+        if (expect(TokenType.PRINT)) {
+            Object wrappedResult = expectWrappedExpression("R1", "R2", "PRINT");
+            return parseOnly ? null : print(wrappedResult);
 
-        else if (expect(TokenType.IF)) {
+        } else if (expect(TokenType.IF)) {
 
             if (!expect(TokenType.LPAREN))
                 onError("R3: expected left parenthesis after IF");
 
-            // save the current environment first in case condition is not met
             boolean condition = (boolean) B();
 
             if (!expect(TokenType.RPAREN))
                 onError("R4: expected right parenthesis in IF");
 
-            if (expect(TokenType.PRINT)) {
-                Object wrappedResult = expectWrappedExpression("R5", "R6", "PRINT");
-                if (condition)
-                    return print(wrappedResult);
-            } else {
-                Environment previousEnvironment = getEnvironment();
-                Object result = A();
-                if (!condition) {
-                    // reset the bindings because we don't want to assign the variable anymore
-                    setEnvironment(previousEnvironment);
+            // the body is only parsed if the condition is not met, so it has no effects
+            boolean wasParseOnly = parseOnly;
+            parseOnly = wasParseOnly || !condition;
+            try {
+                if (expect(TokenType.PRINT)) {
+                    Object wrappedResult = expectWrappedExpression("R5", "R6", "PRINT");
+                    return parseOnly ? null : print(wrappedResult);
                 } else {
-                    return result;
+                    return A();
                 }
+            } finally {
+                parseOnly = wasParseOnly;
             }
         } else
             return A();
 
-        return null;
-
     }
 
 
@@ -279,33 +581,9 @@ public class CompilerGrammar {
         Token op = getToken();
         consumeNextToken();
         Object rhs = E();
-        switch (op.getTokenType()) {
-            case EQUALS:
-                return lhs.equals(rhs);
-            case NOT_EQUALS:
-                return !lhs.equals(rhs);
-            case LESS_THAN:
-                if (lhs instanceof String || rhs instanceof String)
-                    return ("" + lhs).compareTo("" + rhs) < 0;
-                else
-                    return ((double) lhs) < ((double) rhs);
-            case LESS_THAN_OR_EQUALS:
-                if (lhs instanceof String || rhs instanceof String)
-                    return ("" + lhs).compareTo("" + rhs) <= 0;
-                else
-                    return ((double) lhs) <= ((double) rhs);
-            case GREATER_THAN:
-                if (lhs instanceof String || rhs instanceof String)
-                    return ("" + lhs).compareTo("" + rhs) > 0;
-                else
-                    return ((double) lhs) > ((double) rhs);
-            case GREATER_THAN_OR_EQUALS:
-                if (lhs instanceof String || rhs instanceof String)
-                    return ("" + lhs).compareTo("" + rhs) >= 0;
-                else
-                    return ((double) lhs) >= ((double) rhs);
-        }
-        return false;
+        if (parseOnly)
+            return false;
+        return onCondition(compare(op.getTokenType(), lhs, rhs));
     }
 
     /**
@@ -324,9 +602,14 @@ public class CompilerGrammar {
                 onError("M2: expected an equal sign after variable during assignment");
             else {
                 Object value = E();
-                define(identifier, value);
+                if (!parseOnly)
+                    define(identifier, value);
             }
         }
+        if (parseOnly)
+            return null;
+        Environment environment = getEnvironment();
+        onAssignment(environment.identifier, environment.value);
         return null;
     }
 
@@ -342,47 +625,35 @@ public class CompilerGrammar {
      * S - subtraction
      * Accepts grammar of the form:
      * E -> M | M + E | M - E
+     * M -> F | F % M
+     * F -> G | G * F | G / F
+     * G -> U | /U
+     * U -> X | -X
+     * X -> P | P ** X
+     * P -> D | (E)
+     *
+     * The expression is parsed by ExpressionParser, which precedence climbs over an explicit stack
+     * of operators rather than calling a method per grammar symbol, so deeply nested expressions
+     * and long chains of operators take no Java stack. Operators are applied, and errors are
+     * reported, in the same order as the grammar symbols would. When only checking the syntax, no
+     * operator is applied and the operands are null. The symbols E contains can be parsed on their
+     * own by M() to P(), but E() does not call them, so overriding them does not change how E()
+     * parses.
      *
-     * @return the resulting value of the expression
+     * @return the resulting value of the expression, null when only checking the syntax
      */
     protected Object E() throws CompileException {
-        Object a = M();
-        if (expect(TokenType.PLUS)) {
-            Object b = E();
-            if (!(a instanceof Double) || !(b instanceof Double))
-                return "" + a + b;
-            return (double) a + (double) b;
-        } else if (expect(TokenType.MINUS, false)) {
-            // To perform MINUS, we don't consume the MINUS token. We proceed to addition and just
-            // perform unary negation later. This is the preferred approach because of issues when
-            // for example E -> a - b + c becomes E -> a - (b + c) when subtraction is processed
-            // immediately.
-            Object b = E();
-            if (!(a instanceof Double) || !(b instanceof Double)) {
-                onError("E1: expected doubles after MINUS token");
-                return 0.0;
-            }
-            return (double) a + (double) b;
-        } else {
-            return a;
-        }
+        return expression(ExpressionParser.SYMBOL_E);
     }
 
     /**
-     * The grammar symbol for modulo expressions. Note that unlike C/Java, the implementation
-     * below performs right-to-left modulo, since the grammar parser is LL1.
+     * The grammar symbol for modulo expressions. Note that unlike C/Java, modulo is right-to-left,
+     * since the grammar parser is LL1.
      * Accepts grammar of the form:
      * M -> F | F % M
      */
     protected Object M() throws CompileException {
-        Object a = F();
-        if (expect(TokenType.MODULO)) {
-            Object b = M();
-            if (!(a instanceof Double) || !(b instanceof Double))
-                onError("M1: invalid MODULO on non-doubles");
-            return (double) a % (double) b;
-        }
-        return a;
+        return expression(ExpressionParser.SYMBOL_M);
     }
 
     /**
@@ -391,14 +662,7 @@ public class CompilerGrammar {
      * F -> G | G * F | G / F
      */
     protected Object F() throws CompileException {
-        Object a = G();
-        if (expect(TokenType.MULT) || expect(TokenType.DIVIDE, false)) {
-            Object b = F();
-            if (!(a instanceof Double) || !(b instanceof Double))
-                onError("F1: invalid MULT/DIVIDE on non-doubles");
-            return (double) a * (double) b;
-        }
-        return a;
+        return expression(ExpressionParser.SYMBOL_F);
     }
 
     /**
@@ -411,15 +675,7 @@ public class CompilerGrammar {
      * G -> U | / U
      */
     protected Object G() throws CompileException {
-        boolean invert = expect(TokenType.DIVIDE);
-        Object b = U();
-        if (invert) {
-            if (b instanceof Double)
-                return 1.0 / (double) b;
-            else
-                onError("U1: expected negation of a double");
-        }
-        return b;
+        return expression(ExpressionParser.SYMBOL_G);
     }
 
     /**
@@ -428,33 +684,16 @@ public class CompilerGrammar {
      * U -> X | -X
      */
     protected Object U() throws CompileException {
-        boolean negate = expect(TokenType.MINUS);
-        Object b = X();
-        if (negate) {
-            if (b instanceof Double)
-                return - (double) b;
-            else
-                onError("U1: expected negation of a double");
-        }
-        return b;
+        return expression(ExpressionParser.SYMBOL_U);
     }
 
     /**
      * The grammar symbol for exponentiation.
      * Accepts grammar of the form:
-     * X -> P | P ** U
+     * X -> P | P ** X
      */
     protected Object X() throws CompileException {
-        Object a = P();
-        if (expect(TokenType.EXP)) {
-            Object b = X();
-            if (!(a instanceof Double) || !(b instanceof Double)) {
-                onError("X1: expected exponentiation of doubles");
-                return 0.0;
-            }
-            return Math.pow((double) a, (double) b);
-        }
-        return a;
+        return expression(ExpressionParser.SYMBOL_X);
     }
 
     /**
@@ -463,47 +702,539 @@ public class CompilerGrammar {
      * P -> D | (E)
      */
     protected Object P() throws CompileException {
-        if (expect(TokenType.LPAREN, false))
-            return expectWrappedExpression("P1", "P2", null);
-        return D();
+        return expression(ExpressionParser.SYMBOL_P);
+    }
+
+    /**
+     * Parses a grammar symbol of expressions on the operand stack.
+     *
+     * @param symbol the grammar symbol, one of ExpressionParser.SYMBOL_E to SYMBOL_P
+     * @return the resulting value of the expression, null when only checking the syntax
+     */
+    private Object expression(int symbol) throws CompileException {
+        int operandBase = operandCount;
+        try {
+            expressions.parse(symbol);
+            return parseOnly ? null : operand(operandCount - 1);
+        } finally {
+            while (operandCount > operandBase)
+                operands[--operandCount] = null;
+        }
     }
 
     /**
-     * The grammar symbol representing any unit data type.
+     * The grammar symbol representing any unit data type. SQRT(E) is parsed by E().
      * Accepts grammar of the form:
-     * D -> IDENT | NUMBER | STRING | SQRT(E)
+     * D -> IDENT | NUMBER | STRING
      */
     protected Object D() throws CompileException {
         Token token = getToken();
         switch (token.getTokenType()) {
             case IDENT: {
                 consumeNextToken();
-                Object value = getEnvironment().getValue(token.getLexeme());
-                if (value == null)
-                    value = 0.0;
-                return value;
+                return parseOnly ? null : lookup(token.getLexeme());
             }
             case NUMBER:
                 consumeNextToken();
-                return Double.parseDouble(token.getLexeme());
+                return parseOnly ? null : Double.parseDouble(token.getLexeme());
             case STRING:
                 consumeNextToken();
-                return token.getLexeme().substring(1, token.getLexeme().length() - 1);
-            case SQRT: {
-                consumeNextToken();
-                Object value = expectWrappedExpression("D1", "D2", "SQRT");
-                if (value instanceof Double) {
-                    double val = (double) value;
-                    if (val < 0) return 0.0; // dummy value
-                    return Math.sqrt(val);
-                }
-                onError("D3: expected double for expression");
-                break;
-            }
+                return parseOnly
+                    ? null : token.getLexeme().substring(1, token.getLexeme().length() - 1);
             default:
                 onError("D4: expected variable or literal");
         }
         return 0.0;
     }
 
+    /**
+     * The expressions of the grammar, evaluated on its operand stack. The tokens and errors go
+     * through the grammar, so that subclasses overriding its methods see them.
+     */
+    private class Expressions extends ExpressionParser {
+
+        @Override
+        protected TokenType tokenType() {
+            return getToken().getTokenType();
+        }
+
+        @Override
+        protected boolean expect(TokenType tokenType) throws CompileException {
+            return CompilerGrammar.this.expect(tokenType);
+        }
+
+        @Override
+        protected void consumeNextToken() throws CompileException {
+            CompilerGrammar.this.consumeNextToken();
+        }
+
+        @Override
+        protected void onError(String message) throws CompileException {
+            CompilerGrammar.this.onError(message);
+        }
+
+        @Override
+        protected void parseOperand() throws CompileException {
+            pushOperand(D());
+        }
+
+        @Override
+        protected void apply(int operator) throws CompileException {
+            int top = operandCount - 1;
+            switch (operator) {
+                case OPERATOR_INVERT:
+                    if (parseOnly)
+                        return;
+                    if (operands[top] == null)
+                        operandNumbers[top] = 1.0 / operandNumbers[top];
+                    else
+                        setOperand(top, invert(operands[top]));
+                    return;
+                case OPERATOR_NEGATE:
+                    if (parseOnly)
+                        return;
+                    if (operands[top] == null)
+                        operandNumbers[top] = - operandNumbers[top];
+                    else
+                        setOperand(top, negate(operands[top]));
+                    return;
+                case OPEN_SQRT:
+                    if (parseOnly)
+                        return;
+                    if (operands[top] == null) {
+                        double val = operandNumbers[top];
+                        operandNumbers[top] = val < 0 ? 0.0 : Math.sqrt(val);
+                    } else {
+                        setOperand(top, squareRoot(operands[top]));
+                    }
+                    return;
+            }
+            operandCount = top;
+            if (parseOnly) {
+                operands[top] = null;
+                return;
+            }
+            if (operands[top] == null && operands[top - 1] == null) {
+                double a = operandNumbers[top - 1];
+                double b = operandNumbers[top];
+                switch (operator) {
+                    case OPERATOR_ADD:
+                    case OPERATOR_SUBTRACT: // b is already negated
+                        operandNumbers[top - 1] = a + b;
+                        break;
+                    case OPERATOR_MODULO:
+                        operandNumbers[top - 1] = a % b;
+                        break;
+                    case OPERATOR_MULTIPLY:
+                        operandNumbers[top - 1] = a * b;
+                        break;
+                    default:
+                        operandNumbers[top - 1] = Math.pow(a, b);
+                }
+                return;
+            }
+            Object b = operand(top);
+            Object a = operand(top - 1);
+            operands[top] = null;
+            switch (operator) {
+                case OPERATOR_ADD:
+                    setOperand(top - 1, add(a, b));
+                    break;
+                case OPERATOR_SUBTRACT:
+                    setOperand(top - 1, subtract(a, b));
+                    break;
+                case OPERATOR_MODULO:
+                    setOperand(top - 1, modulo(a, b));
+                    break;
+                case OPERATOR_MULTIPLY:
+                    setOperand(top - 1, multiply(a, b));
+                    break;
+                default:
+                    setOperand(top - 1, power(a, b));
+            }
+        }
+    }
+
+    private void pushOperand(Object operand) {
+        if (operandCount == operands.length) {
+            operandNumbers = Arrays.copyOf(operandNumbers, operandCount * 2);
+            operands = Arrays.copyOf(operands, operandCount * 2);
+        }
+        setOperand(operandCount++, operand);
+    }
+
+    /**
+     * Boxes an operand of E(), so numbers are only boxed when they leave the operand stack.
+     */
+    private Object operand(int index) {
+        return operands[index] != null ? operands[index] : (Object) operandNumbers[index];
+    }
+
+    private void setOperand(int index, Object value) {
+        if (value instanceof Double) {
+            operandNumbers[index] = (Double) value;
+            operands[index] = null;
+        } else {
+            operands[index] = value;
+        }
+    }
+
+    // operations shared by the grammar and the evaluator of parsed programs; like VirtualMachine,
+    // both apply the operators to numbers in place, and only call these methods for other values
+
+    /**
+     * Compares two values with a relational operator.
+     *
+     * @param operator the relational operator
+     * @param lhs      the left operand
+     * @param rhs      the right operand
+     * @return the result of the comparison, false if the operator is not relational
+     */
+    protected boolean compare(TokenType operator, Object lhs, Object rhs) {
+        switch (operator) {
+            case EQUALS:
+                return lhs.equals(rhs);
+            case NOT_EQUALS:
+                return !lhs.equals(rhs);
+            case LESS_THAN:
+                if (lhs instanceof String || rhs instanceof String)
+                    return ("" + lhs).compareTo("" + rhs) < 0;
+                else
+                    return ((double) lhs) < ((double) rhs);
+            case LESS_THAN_OR_EQUALS:
+                if (lhs instanceof String || rhs instanceof String)
+                    return ("" + lhs).compareTo("" + rhs) <= 0;
+                else
+                    return ((double) lhs) <= ((double) rhs);
+            case GREATER_THAN:
+                if (lhs instanceof String || rhs instanceof String)
+                    return ("" + lhs).compareTo("" + rhs) > 0;
+                else
+                    return ((double) lhs) > ((double) rhs);
+            case GREATER_THAN_OR_EQUALS:
+                if (lhs instanceof String || rhs instanceof String)
+                    return ("" + lhs).compareTo("" + rhs) >= 0;
+                else
+                    return ((double) lhs) >= ((double) rhs);
+        }
+        return false;
+    }
+
+    /**
+     * Adds two doubles, or concatenates them if either one is not a double.
+     */
+    protected Object add(Object a, Object b) {
+        if (!(a instanceof Double) || !(b instanceof Double))
+            return "" + a + b;
+        return (double) a + (double) b;
+    }
+
+    /**
+     * Adds a double to an already negated double, for the MINUS token.
+     */
+    protected Object subtract(Object a, Object b) throws CompileException {
+        if (!(a instanceof Double) || !(b instanceof Double)) {
+            onError("E1: expected doubles after MINUS token");
+            return 0.0;
+        }
+        return (double) a + (double) b;
+    }
+
+    /**
+     * Gets the remainder of two doubles.
+     */
+    protected Object modulo(Object a, Object b) throws CompileException {
+        if (!(a instanceof Double) || !(b instanceof Double))
+            onError("M1: invalid MODULO on non-doubles");
+        return (double) a % (double) b;
+    }
+
+    /**
+     * Multiplies two doubles, or a double with an already inverted double for the DIVIDE token.
+     */
+    protected Object multiply(Object a, Object b) throws CompileException {
+        if (!(a instanceof Double) || !(b instanceof Double))
+            onError("F1: invalid MULT/DIVIDE on non-doubles");
+        return (double) a * (double) b;
+    }
+
+    /**
+     * Gets the multiplicative inverse of a double.
+     */
+    protected Object invert(Object b) throws CompileException {
+        if (b instanceof Double)
+            return 1.0 / (double) b;
+        onError("U1: expected negation of a double");
+        return b;
+    }
+
+    /**
+     * Negates a double.
+     */
+    protected Object negate(Object b) throws CompileException {
+        if (b instanceof Double)
+            return - (double) b;
+        onError("U1: expected negation of a double");
+        return b;
+    }
+
+    /**
+     * Raises a double to the power of another double.
+     */
+    protected Object power(Object a, Object b) throws CompileException {
+        if (!(a instanceof Double) || !(b instanceof Double)) {
+            onError("X1: expected exponentiation of doubles");
+            return 0.0;
+        }
+        return Math.pow((double) a, (double) b);
+    }
+
+    /**
+     * Gets the square root of a double, 0 for negative doubles.
+     */
+    protected Object squareRoot(Object value) throws CompileException {
+        if (value instanceof Double) {
+            double val = (double) value;
+            if (val < 0) return 0.0; // dummy value
+            return Math.sqrt(val);
+        }
+        onError("D3: expected double for expression");
+        return 0.0;
+    }
+
+    /**
+     * Gets the value bound to an identifier, 0 if the identifier is not bound.
+     */
+    protected Object lookup(String identifier) {
+        Object value = getEnvironment().getValue(identifier);
+        if (value == null)
+            value = 0.0;
+        return value;
+    }
+
+    /**
+     * Evaluates parsed programs exactly like the grammar symbols evaluate while parsing. The
+     * expressions are walked without recursion onto an operand stack that keeps numbers unboxed,
+     * like the one of E(): numbers are in the numbers array, and the other values are in the
+     * references array, which holds null for numbers.
+     */
+    private class Evaluator implements Visitor<Object> {
+
+        final ExpressionWalker walker = new ExpressionWalker();
+        double[] numbers = new double[16];
+        Object[] references = new Object[16];
+        int size = 0;
+        Object[] temporaries;
+        double[] temporaryNumbers;
+
+        /**
+         * Prepares the evaluator for a program, dropping what a program that stopped with an
+         * error left on the operand stack.
+         */
+        void start(Program program) {
+            Arrays.fill(references, 0, size, null);
+            size = 0;
+            temporaries = new Object[program.temporaries];
+            temporaryNumbers = new double[program.temporaries];
+        }
+
+        /**
+         * Evaluates an expression onto the operand stack: every node is visited once its
+         * operands are on the stack.
+         */
+        void evaluate(Expression expression) throws CompileException {
+            walker.start(expression);
+            while (walker.next())
+                if (!walker.isEntering())
+                    walker.node().accept(this);
+        }
+
+        /**
+         * Pops the value on top of the operand stack, boxing numbers.
+         */
+        Object pop() {
+            Object value = references[--size];
+            if (value == null)
+                return numbers[size];
+            references[size] = null;
+            return value;
+        }
+
+        void push(Object value) {
+            if (size == references.length) {
+                numbers = Arrays.copyOf(numbers, size * 2);
+                references = Arrays.copyOf(references, size * 2);
+            }
+            if (value instanceof Double) {
+                numbers[size] = (Double) value;
+                references[size++] = null;
+            } else {
+                references[size++] = value;
+            }
+        }
+
+        @Override
+        public Object visitPrint(PrintStatement node) throws CompileException {
+            evaluate(node.expression);
+            return print(pop());
+        }
+
+        @Override
+        public Object visitAssignment(AssignmentStatement node) throws CompileException {
+            evaluate(node.value);
+            define(node.identifier, pop());
+            Environment environment = getEnvironment();
+            onAssignment(environment.identifier, environment.value);
+            return null;
+        }
+
+        @Override
+        public Object visitIf(IfStatement node) throws CompileException {
+            boolean condition = (boolean) node.condition.accept(this);
+            // the body is skipped if the condition is not met, like the grammar only parses it
+            return condition ? node.body.accept(this) : null;
+        }
+
+        @Override
+        public Object visitCondition(Condition node) throws CompileException {
+            if (node.isConstant())
+                return onCondition(node.value);
+            evaluate(node.lhs);
+            evaluate(node.rhs);
+            if (references[size - 1] != null || references[size - 2] != null) {
+                Object rhs = pop();
+                Object lhs = pop();
+                return onCondition(compare(node.operator, lhs, rhs));
+            }
+            size -= 2;
+            double a = numbers[size];
+            double b = numbers[size + 1];
+            switch (node.operator) {
+                case EQUALS: // like Double.equals()
+                    return onCondition(Double.doubleToLongBits(a) == Double.doubleToLongBits(b));
+                case NOT_EQUALS:
+                    return onCondition(Double.doubleToLongBits(a) != Double.doubleToLongBits(b));
+                case LESS_THAN:
+                    return onCondition(a < b);
+                case LESS_THAN_OR_EQUALS:
+                    return onCondition(a <= b);
+                case GREATER_THAN:
+                    return onCondition(a > b);
+                case GREATER_THAN_OR_EQUALS:
+                    return onCondition(a >= b);
+                default:
+                    return onCondition(false);
+            }
+        }
+
+        @Override
+        public Object visitBinary(BinaryExpression node) throws CompileException {
+            if (references[size - 1] == null && references[size - 2] == null) {
+                double b = numbers[--size];
+                int top = size - 1;
+                switch (node.operator) {
+                    case PLUS:
+                    case MINUS: // b is already negated
+                        numbers[top] += b;
+                        return null;
+                    case MODULO:
+                        numbers[top] %= b;
+                        return null;
+                    case MULT:
+                        numbers[top] *= b;
+                        return null;
+                    case EXP:
+                        numbers[top] = Math.pow(numbers[top], b);
+                        return null;
+                    default:
+                        throw new IllegalArgumentException("not a binary operator: "
+                                                           + node.operator);
+                }
+            }
+            Object b = pop();
+            Object a = pop();
+            switch (node.operator) {
+                case PLUS:
+                    push(add(a, b));
+                    break;
+                case MINUS:
+                    push(subtract(a, b));
+                    break;
+                case MODULO:
+                    push(modulo(a, b));
+                    break;
+                case MULT:
+                    push(multiply(a, b));
+                    break;
+                case EXP:
+                    push(power(a, b));
+                    break;
+                default:
+                    throw new IllegalArgumentException("not a binary operator: " + node.operator);
+            }
+            return null;
+        }
+
+        @Override
+        public Object visitUnary(UnaryExpression node) throws CompileException {
+            int top = size - 1;
+            if (references[top] == null) {
+                switch (node.operator) {
+                    case DIVIDE:
+                        numbers[top] = 1.0 / numbers[top];
+                        return null;
+                    case MINUS:
+                        numbers[top] = - numbers[top];
+                        return null;
+                    case SQRT:
+                        numbers[top] = numbers[top] < 0 ? 0.0 : Math.sqrt(numbers[top]);
+                        return null;
+                    default:
+                        throw new IllegalArgumentException("not a unary operator: "
+                                                           + node.operator);
+                }
+            }
+            Object operand = pop();
+            switch (node.operator) {
+                case DIVIDE:
+                    push(invert(operand));
+                    break;
+                case MINUS:
+                    push(negate(operand));
+                    break;
+                case SQRT:
+                    push(squareRoot(operand));
+                    break;
+                default:
+                    throw new IllegalArgumentException("not a unary operator: " + node.operator);
+            }
+            return null;
+        }
+
+        @Override
+        public Object visitLiteral(Literal node) {
+            push(node.value);
+            return null;
+        }
+
+        @Override
+        public Object visitVariable(Variable node) {
+            push(lookup(node.identifier));
+            return null;
+        }
+
+        @Override
+        public Object visitTemporary(Temporary node) {
+            if (node.value == null) {
+                push(temporaries[node.index]); // null for a number, set next
+                numbers[size - 1] = temporaryNumbers[node.index];
+            } else {
+                // the value is on top of the stack
+                temporaries[node.index] = references[size - 1];
+                temporaryNumbers[node.index] = numbers[size - 1];
+            }
+            return null;
+        }
+    }
+
 }
@@ -1,7 +1,8 @@
 package project2.compiler;
 
 /**
- * A simple linked list environment.
+ * A simple linked list environment. Every binding is a new node, so looking up an identifier takes
+ * longer the more bindings were made; see SlotEnvironment for constant time lookups.
  */
 public class Environment {
 
@@ -19,13 +20,13 @@ public class Environment {
     }
 
     /**
-     * Extends a parent environment by providing a new identifier and a value. This constructor is
-     * private, use the define() method instead.
+     * Extends a parent environment by providing a new identifier and a value. Use the define()
+     * method instead, this constructor is only for subclasses with their own storage.
      * @param identifier the identifier for the value to be bound
      * @param value the value to be bound
      * @param parent the parent environment to be extended
      */
-    private Environment(String identifier, Object value, Environment parent) {
+    protected Environment(String identifier, Object value, Environment parent) {
         this.identifier = identifier;
         this.value = value;
         this.parent = parent;
@@ -48,8 +49,12 @@ public class Environment {
      * @return true if the identifier exists in the current environment
      */
     public boolean isDefined(String identifier) {
-        return !(identifier == null || this.identifier == null || this.parent == null)
-            && (this.identifier.equals(identifier) || parent.isDefined(identifier));
+        if (identifier == null)
+            return false;
+        for (Environment env = this; env.identifier != null && env.parent != null; env = env.parent)
+            if (env.identifier.equals(identifier))
+                return true;
+        return false;
     }
 
     /**
@@ -59,9 +64,22 @@ public class Environment {
      * @return the bound value associated with this identifier, null if undefined
      */
     public Object getValue(String identifier) {
-        if (identifier == null || this.identifier == null || this.parent == null)
+        if (identifier == null)
             return null;
-        return this.identifier.equals(identifier) ? value : parent.getValue(identifier);
+        for (Environment env = this; env.identifier != null && env.parent != null; env = env.parent)
+            if (env.identifier.equals(identifier))
+                return env.value;
+        return null;
+    }
+
+    /**
+     * Gets an environment with the same bindings that can be used independently of this one,
+     * e.g. by another thread evaluating a variant of a program from a shared state. Environments
+     * are never changed, so this returns the environment itself.
+     * @return an environment with the same bindings
+     */
+    public Environment fork() {
+        return this;
     }
 
 }
@@ -0,0 +1,220 @@
+package project2.compiler;
+
+import java.util.Arrays;
+
+import project1.enums.TokenType;
+
+/**
+ * The operator engine shared by CompilerGrammar, which evaluates expressions as it parses them,
+ * and AstParser, which builds their syntax trees. It parses the grammar symbols of expressions:
+ * E -> M | M + E | M - E
+ * M -> F | F % M
+ * F -> G | G * F | G / F
+ * G -> U | /U
+ * U -> X | -X
+ * X -> P | P ** X
+ * P -> D | (E)
+ * D -> IDENT | NUMBER | STRING | SQRT(E)
+ *
+ * Rather than with a method per grammar symbol, an expression is parsed by precedence climbing
+ * over an explicit stack of operators, so deeply nested expressions and long chains of operators
+ * take no Java stack. The precedence of an operator is the level of its symbol, and operators of
+ * the same symbol are right-associative, like the grammar: an operator is applied when a
+ * following operator has a lower precedence, or at the end of its wrapped expression. Like the
+ * grammar, the MINUS and DIVIDE tokens after an operand are not consumed as binary operators, but
+ * as the negation and the inversion of the next operand, so subtracting adds the negated operand
+ * and dividing multiplies by the inverted operand. Operators are applied, and errors are
+ * reported, in the same order as the grammar symbols would.
+ *
+ * Subclasses read the tokens, parse the operands of D, keep the operand stack and apply the
+ * operators to it. The engine keeps its operator stack for the next expressions, so it parses
+ * one expression at a time, though an operand may parse a nested expression.
+ */
+public abstract class ExpressionParser {
+
+    /**
+     * The operators applied by apply(), with the precedence of their grammar symbols. Opening
+     * parentheses are kept on the operator stack too, with no precedence, and so is SQRT(, which
+     * is applied once its expression is closed.
+     */
+    protected static final int OPERATOR_ADD = 0;
+    protected static final int OPERATOR_SUBTRACT = 1;
+    protected static final int OPERATOR_MODULO = 2;
+    protected static final int OPERATOR_MULTIPLY = 3;
+    protected static final int OPERATOR_INVERT = 4;
+    protected static final int OPERATOR_NEGATE = 5;
+    protected static final int OPERATOR_POWER = 6;
+    protected static final int OPEN_PARENTHESIS = 7;
+    protected static final int OPEN_SQRT = 8;
+    private static final int[] PRECEDENCE = {1, 1, 2, 3, 4, 5, 6, 0, 0};
+
+    /**
+     * The grammar symbols that parse() can start from, with the lowest precedence of the binary
+     * operators that they take outside of parentheses. G takes both prefixes, U only the MINUS.
+     */
+    public static final int SYMBOL_E = 0;
+    public static final int SYMBOL_M = 1;
+    public static final int SYMBOL_F = 2;
+    public static final int SYMBOL_G = 3;
+    public static final int SYMBOL_U = 4;
+    public static final int SYMBOL_X = 5;
+    public static final int SYMBOL_P = 6;
+    private static final int[] LOWEST_PRECEDENCE = {1, 2, 3, 6, 6, 6, 7};
+
+    private int[] operators = new int[16];
+    private int operatorCount = 0;
+
+    /**
+     * Gets the type of the current token.
+     *
+     * @return the type of the token to parse next
+     */
+    protected abstract TokenType tokenType();
+
+    /**
+     * Checks if the current token is of expected type, and consumes it if it is.
+     *
+     * @param tokenType the token type expected
+     * @return true if the current token has type equal to tokenType
+     */
+    protected abstract boolean expect(TokenType tokenType) throws CompileException;
+
+    /**
+     * Consumes the current token.
+     */
+    protected abstract void consumeNextToken() throws CompileException;
+
+    /**
+     * Handles a syntax error. Parsing goes on if this method returns.
+     *
+     * @param message the error message
+     */
+    protected abstract void onError(String message) throws CompileException;
+
+    /**
+     * Parses the D symbol at the current token, and pushes its value on the operand stack.
+     */
+    protected abstract void parseOperand() throws CompileException;
+
+    /**
+     * Applies an operator to the operand stack: the binary operators replace the two operands on
+     * top with their result, and the others, including OPEN_SQRT, replace the operand on top.
+     *
+     * @param operator the operator to apply
+     */
+    protected abstract void apply(int operator) throws CompileException;
+
+    /**
+     * Parses a grammar symbol, and leaves its value on top of the operand stack.
+     *
+     * @param symbol the grammar symbol, one of SYMBOL_E to SYMBOL_P
+     */
+    public void parse(int symbol) throws CompileException {
+        int operatorBase = operatorCount;
+        int lowestPrecedence = LOWEST_PRECEDENCE[symbol];
+        // whether the next operand may start with / or -, see G and U
+        boolean invertible = symbol <= SYMBOL_G;
+        boolean negatable = symbol <= SYMBOL_U;
+        int wrapped = 0; // the parentheses and SQRT( opened by this call
+        try {
+            while (true) {
+
+                // G -> U | /U, U -> X | -X, P -> D | (E), D -> SQRT(E)
+                if (invertible && expect(TokenType.DIVIDE))
+                    pushOperator(OPERATOR_INVERT);
+                if (negatable && expect(TokenType.MINUS))
+                    pushOperator(OPERATOR_NEGATE);
+                if (expect(TokenType.LPAREN)) {
+                    pushOperator(OPEN_PARENTHESIS);
+                    invertible = negatable = true;
+                    ++wrapped;
+                    continue;
+                }
+                if (expect(TokenType.SQRT)) {
+                    if (!expect(TokenType.LPAREN))
+                        onError("D1: expected left parenthesis after SQRT");
+                    pushOperator(OPEN_SQRT);
+                    invertible = negatable = true;
+                    ++wrapped;
+                    continue;
+                }
+                parseOperand();
+
+                // binary operators, or the end of wrapped expressions
+                while (true) {
+                    TokenType type = tokenType();
+                    int operator = binaryOperator(type);
+                    if (operator >= 0
+                        && (wrapped > 0 || PRECEDENCE[operator] >= lowestPrecedence)) {
+                        reduce(operatorBase, PRECEDENCE[operator]);
+                        pushOperator(operator);
+                        if (type != TokenType.MINUS && type != TokenType.DIVIDE)
+                            consumeNextToken();
+                        invertible = negatable = operator != OPERATOR_POWER; // X -> P ** X
+                        break;
+                    }
+                    reduce(operatorBase, 0);
+                    if (wrapped == 0)
+                        return;
+                    // the wrapped expression is a P, which can be followed by **
+                    --wrapped;
+                    if (operators[--operatorCount] == OPEN_PARENTHESIS) {
+                        if (!expect(TokenType.RPAREN))
+                            onError("P2: expected right parenthesis");
+                    } else {
+                        if (!expect(TokenType.RPAREN))
+                            onError("D2: expected right parenthesis after SQRT(<expression>");
+                        apply(OPEN_SQRT);
+                    }
+                }
+            }
+        } finally {
+            operatorCount = operatorBase;
+        }
+    }
+
+    /**
+     * Gets the operator for a binary operator token.
+     *
+     * @param type the token type after an operand
+     * @return the operator, -1 if the token does not continue the expression
+     */
+    private static int binaryOperator(TokenType type) {
+        switch (type) {
+            case PLUS:
+                return OPERATOR_ADD;
+            case MINUS:
+                return OPERATOR_SUBTRACT;
+            case MODULO:
+                return OPERATOR_MODULO;
+            case MULT:
+            case DIVIDE:
+                return OPERATOR_MULTIPLY;
+            case EXP:
+                return OPERATOR_POWER;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Applies the operators on top of the stack with a higher precedence than a given one, down
+     * to an operator of parse() that did not apply them yet.
+     *
+     * @param operatorBase the first operator of the current call of parse()
+     * @param precedence   the precedence of the following operator, 0 to apply all operators
+     *                     of the wrapped expression
+     */
+    private void reduce(int operatorBase, int precedence) throws CompileException {
+        while (operatorCount > operatorBase
+            && PRECEDENCE[operators[operatorCount - 1]] > precedence)
+            apply(operators[--operatorCount]);
+    }
+
+    private void pushOperator(int operator) {
+        if (operatorCount == operators.length)
+            operators = Arrays.copyOf(operators, operatorCount * 2);
+        operators[operatorCount++] = operator;
+    }
+
+}
@@ -0,0 +1,184 @@
+package project2.compiler;
+
+/**
+ * A persistent environment stored in a hash array mapped trie. Lookups and bindings visit at most
+ * one node per 5 bits of the hash of the identifier, and define() copies only the nodes on that
+ * path, sharing the rest with the environment it extends. Only the latest value of every
+ * identifier is kept.
+ *
+ * Environments are never changed after they are created, so any of them can be restored, e.g. to
+ * go back to the bindings from before a program ran, and they can be shared between threads
+ * freely: fork() returns the environment itself. The parent of every HAMT environment is null:
+ * the bindings are not kept as a list.
+ */
+public class HamtEnvironment extends Environment {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * Returned by find() for identifiers that are not bound, to tell them apart from null values.
+     */
+    private static final Object ABSENT = new Object();
+
+    private static final Node EMPTY = new Node(0, new Object[0]);
+
+    private final Node root;
+
+    /**
+     * Creates a new empty environment.
+     */
+    public HamtEnvironment() {
+        super();
+        this.root = EMPTY;
+    }
+
+    private HamtEnvironment(String identifier, Object value, Node root) {
+        super(identifier, value, null);
+        this.root = root;
+    }
+
+    /**
+     * Creates a new environment that binds a value to an identifier, replacing its previous
+     * value. This environment is unchanged.
+     * @param identifier the identifier for the value to be bound
+     * @param value the value to be bound
+     * @return a new HamtEnvironment with the binding
+     */
+    @Override
+    public Environment define(String identifier, Object value) {
+        return new HamtEnvironment(identifier, value,
+                                   root.put(identifier, hash(identifier), value, 0));
+    }
+
+    /**
+     * Checks whether an identifier is defined in the current environment.
+     * @param identifier the identifier to check
+     * @return true if the identifier exists in the current environment
+     */
+    @Override
+    public boolean isDefined(String identifier) {
+        return identifier != null && find(identifier) != ABSENT;
+    }
+
+    /**
+     * Gets the bound value of the identifier in the current environment. Returns null if the
+     * identifier is not bound.
+     * @param identifier the identifier to find
+     * @return the bound value associated with this identifier, null if undefined
+     */
+    @Override
+    public Object getValue(String identifier) {
+        if (identifier == null)
+            return null;
+        Object value = find(identifier);
+        return value == ABSENT ? null : value;
+    }
+
+    /**
+     * Gets this environment, which can be used from any thread as is.
+     * @return this environment
+     */
+    @Override
+    public Environment fork() {
+        return this;
+    }
+
+    private Object find(String identifier) {
+        int hash = hash(identifier);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            Object[] array = node.array;
+            if (shift >= Integer.SIZE) {
+                // all the bits of the hash are equal: a list of colliding entries
+                for (int index = 0; index < array.length; index += 2)
+                    if (identifier.equals(array[index]))
+                        return array[index + 1];
+                return ABSENT;
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0)
+                return ABSENT;
+            int index = node.index(bit);
+            Object key = array[index];
+            if (key == null)
+                node = (Node) array[index + 1];
+            else
+                return identifier.equals(key) ? array[index + 1] : ABSENT;
+        }
+    }
+
+    private static int hash(String identifier) {
+        int hash = identifier.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * A node of the trie. The bitmap has a bit set for every 5 bits of the hash that are present
+     * at this level, and the array has two entries per set bit: an identifier and its value, or
+     * null and the child node. Nodes below the last level have no bitmap and list their colliding
+     * identifiers and values.
+     */
+    private static final class Node {
+
+        final int bitmap;
+        final Object[] array;
+
+        Node(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        int index(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        /**
+         * Binds a value to an identifier.
+         * @return a new node with the binding, sharing the unchanged children
+         */
+        Node put(String identifier, int hash, Object value, int shift) {
+            if (shift >= Integer.SIZE) {
+                for (int index = 0; index < array.length; index += 2)
+                    if (identifier.equals(array[index]))
+                        return new Node(0, replace(index + 1, value));
+                return new Node(0, insert(array.length, identifier, value));
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int index = index(bit);
+            if ((bitmap & bit) == 0)
+                return new Node(bitmap | bit, insert(index, identifier, value));
+            Object key = array[index];
+            Object current = array[index + 1];
+            if (key == null) {
+                Node child = ((Node) current).put(identifier, hash, value, shift + BITS);
+                return new Node(bitmap, replace(index + 1, child));
+            }
+            if (identifier.equals(key))
+                return new Node(bitmap, replace(index + 1, value));
+            // two identifiers share these bits of their hashes: move both one level down
+            String other = (String) key;
+            Node child = EMPTY.put(other, hash(other), current, shift + BITS)
+                              .put(identifier, hash, value, shift + BITS);
+            Object[] copy = replace(index + 1, child);
+            copy[index] = null;
+            return new Node(bitmap, copy);
+        }
+
+        private Object[] replace(int index, Object value) {
+            Object[] copy = array.clone();
+            copy[index] = value;
+            return copy;
+        }
+
+        private Object[] insert(int index, String identifier, Object value) {
+            Object[] copy = new Object[array.length + 2];
+            System.arraycopy(array, 0, copy, 0, index);
+            copy[index] = identifier;
+            copy[index + 1] = value;
+            System.arraycopy(array, index, copy, index + 2, array.length - index);
+            return copy;
+        }
+    }
+
+}
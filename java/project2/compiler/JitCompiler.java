@@ -0,0 +1,365 @@
+package project2.compiler;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import project1.enums.TokenType;
+import project2.compiler.ast.AssignmentStatement;
+import project2.compiler.ast.BinaryExpression;
+import project2.compiler.ast.Condition;
+import project2.compiler.ast.Expression;
+import project2.compiler.ast.ExpressionWalker;
+import project2.compiler.ast.IfStatement;
+import project2.compiler.ast.Literal;
+import project2.compiler.ast.PrintStatement;
+import project2.compiler.ast.Program;
+import project2.compiler.ast.Statement;
+import project2.compiler.ast.Temporary;
+import project2.compiler.ast.UnaryExpression;
+import project2.compiler.ast.Variable;
+import project2.compiler.ast.Visitor;
+
+import static project2.compiler.ClassFileWriter.*;
+
+/**
+ * Compiles parsed programs to JVM bytecode, one hidden class per program, so that HotSpot can
+ * inline and optimize them like any other method. Only programs without strings are compiled:
+ * their variables become double locals, IF statements become branches, and no operator can fail,
+ * so no errors are reported. The hooks of the grammar are called like with execute(Program).
+ */
+final class JitCompiler implements Visitor<Void> {
+
+    /**
+     * The interface implemented by the generated classes. The slots hold the values of the
+     * variables of the program, and are updated when the code returns or throws.
+     */
+    interface Code {
+        void run(CompilerGrammar grammar, double[] slots, boolean[] assigned);
+    }
+
+    /**
+     * HotSpot does not compile methods larger than this, so larger programs stay interpreted.
+     */
+    static final int HUGE_METHOD_LIMIT = 8000;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final String CLASS_NAME = "project2/compiler/JitCode";
+    private static final String GRAMMAR = "project2/compiler/CompilerGrammar";
+    private static final String RUN = "(L" + GRAMMAR + ";[D[Z)V";
+
+    // parameters and locals of the run method
+    private static final int GRAMMAR_LOCAL = 1;
+    private static final int SLOTS_LOCAL = 2;
+    private static final int ASSIGNED_LOCAL = 3;
+    private static final int VALUE_LOCAL = 4;
+    private static final int FIRST_VARIABLE_LOCAL = 6;
+
+    private final ClassFileWriter writer =
+        new ClassFileWriter(CLASS_NAME, "java/lang/Object", "project2/compiler/JitCompiler$Code");
+    private final ClassFileWriter.Code code;
+    private final ExpressionWalker walker = new ExpressionWalker();
+    private final List<String> variables = new ArrayList<>();
+    private final Map<String, Integer> slots = new HashMap<>();
+    private boolean numeric = true;
+
+    private JitCompiler(List<String> variables) {
+        this.variables.addAll(variables);
+        for (int slot = 0; slot < variables.size(); ++slot)
+            slots.put(variables.get(slot), slot);
+        this.code = writer.new Code(FIRST_VARIABLE_LOCAL + 2 * variables.size());
+    }
+
+    /**
+     * Compiles a program to a hidden class.
+     * @param program the program returned by CompilerGrammar.parse()
+     * @param bytecode the bytecode of the program, whose variable slots are reused
+     * @return the compiled program, or null if the program cannot be compiled
+     */
+    static CompiledProgram compile(Program program, Bytecode bytecode) {
+        JitCompiler compiler = new JitCompiler(List.of(bytecode.variables));
+        ClassFileWriter.Code code = compiler.code;
+        int slotCount = compiler.variables.size();
+
+        // load the variables from the slots into locals
+        for (int slot = 0; slot < slotCount; ++slot) {
+            code.load(ALOAD, SLOTS_LOCAL);
+            code.pushInt(slot);
+            code.op(DALOAD, 0);
+            code.store(DSTORE, local(slot));
+        }
+
+        code.startTry();
+        try {
+            for (Statement statement : program.statements) {
+                code.load(ALOAD, GRAMMAR_LOCAL);
+                code.invoke(INVOKEVIRTUAL, GRAMMAR, "onStatement", "()V", -1);
+                statement.accept(compiler);
+                if (!compiler.numeric || code.length() > HUGE_METHOD_LIMIT)
+                    return null;
+            }
+        } catch (CompileException e) {
+            throw new IllegalStateException(e); // the compiler does not throw
+        }
+
+        // store the locals back into the slots, also when a hook throws
+        compiler.storeVariables();
+        code.op(RETURN, 0);
+        code.startHandler();
+        int exception = local(slotCount);
+        code.store(ASTORE, exception);
+        compiler.storeVariables();
+        code.load(ALOAD, exception);
+        code.op(ATHROW, -1);
+        if (code.length() > HUGE_METHOD_LIMIT)
+            return null;
+
+        compiler.writer.addMethod(ACC_PUBLIC, "run", RUN, code);
+        try {
+            // not a nestmate and not strong: the class can be unloaded with the instance
+            byte[] classFile = compiler.writer.toByteArray();
+            MethodHandles.Lookup lookup = LOOKUP.defineHiddenClass(classFile, true);
+            Code instance = (Code) lookup.lookupClass().getConstructor().newInstance();
+            return new CompiledProgram(instance, bytecode.variables);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int local(int slot) {
+        return FIRST_VARIABLE_LOCAL + 2 * slot;
+    }
+
+    private void storeVariables() {
+        for (int slot = 0; slot < variables.size(); ++slot) {
+            code.load(ALOAD, SLOTS_LOCAL);
+            code.pushInt(slot);
+            code.load(DLOAD, local(slot));
+            code.op(DASTORE, -4);
+        }
+    }
+
+    /**
+     * Boxes the double on top of the stack.
+     */
+    private void box() {
+        code.invoke(INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", -1);
+    }
+
+    /**
+     * Prints the double on top of the stack, the grammar is below it.
+     */
+    private void print() {
+        box();
+        code.invoke(INVOKEVIRTUAL, GRAMMAR, "print", "(Ljava/lang/Object;)Ljava/lang/Object;", -1);
+        code.op(POP, -1);
+    }
+
+    /**
+     * Stores the double in VALUE_LOCAL to a variable and marks it assigned.
+     */
+    private void assign(int slot) {
+        code.load(DLOAD, VALUE_LOCAL);
+        code.store(DSTORE, local(slot));
+        code.load(ALOAD, ASSIGNED_LOCAL);
+        code.pushInt(slot);
+        code.pushInt(1);
+        code.op(BASTORE, -3);
+    }
+
+    /**
+     * Calls the assignment hook with the double in VALUE_LOCAL.
+     */
+    private void onAssignment(String identifier) {
+        code.load(ALOAD, GRAMMAR_LOCAL);
+        code.pushString(identifier);
+        code.load(DLOAD, VALUE_LOCAL);
+        box();
+        code.invoke(INVOKEVIRTUAL, GRAMMAR, "onAssignment",
+                    "(Ljava/lang/String;Ljava/lang/Object;)V", -3);
+    }
+
+    /**
+     * Emits the code of an expression, walking it without recursion: every node emits its code
+     * after the code of its operands, except that an inversion pushes its dividend first.
+     */
+    private void expression(Expression expression) throws CompileException {
+        walker.start(expression);
+        while (walker.next()) {
+            Expression node = walker.node();
+            if (!walker.isEntering())
+                node.accept(this);
+            else if (node instanceof UnaryExpression
+                && ((UnaryExpression) node).operator == TokenType.DIVIDE)
+                code.pushDouble(1.0);
+        }
+    }
+
+    @Override
+    public Void visitPrint(PrintStatement node) throws CompileException {
+        code.load(ALOAD, GRAMMAR_LOCAL);
+        expression(node.expression);
+        print();
+        return null;
+    }
+
+    @Override
+    public Void visitAssignment(AssignmentStatement node) throws CompileException {
+        expression(node.value);
+        code.store(DSTORE, VALUE_LOCAL);
+        assign(slots.get(node.identifier));
+        onAssignment(node.identifier);
+        return null;
+    }
+
+    @Override
+    public Void visitIf(IfStatement node) throws CompileException {
+        node.condition.accept(this);
+        // the body is skipped if the condition is not met, like in the grammar
+        int skip = code.branch(IFEQ, -1);
+        node.body.accept(this);
+        if (code.length() > HUGE_METHOD_LIMIT)
+            return null; // too far to branch over, and not compiled anyway
+        code.bind(skip);
+        return null;
+    }
+
+    @Override
+    public Void visitCondition(Condition node) throws CompileException {
+        code.load(ALOAD, GRAMMAR_LOCAL);
+        if (node.isConstant()) {
+            code.pushInt(node.value ? 1 : 0);
+            code.invoke(INVOKEVIRTUAL, GRAMMAR, "onCondition", "(Z)Z", -1);
+            return null;
+        }
+        boolean equality = node.operator == TokenType.EQUALS
+            || node.operator == TokenType.NOT_EQUALS;
+        expression(node.lhs);
+        if (equality)
+            doubleToLongBits();
+        expression(node.rhs);
+        int isFalse;
+        if (equality) {
+            // like Double.equals(), NaN equals NaN and 0.0 does not equal -0.0
+            doubleToLongBits();
+            code.op(LCMP, -3);
+            isFalse = code.branch(node.operator == TokenType.EQUALS ? IFNE : IFEQ, -1);
+        } else {
+            switch (node.operator) {
+                case LESS_THAN:
+                    code.op(DCMPG, -3);
+                    isFalse = code.branch(IFGE, -1);
+                    break;
+                case LESS_THAN_OR_EQUALS:
+                    code.op(DCMPG, -3);
+                    isFalse = code.branch(IFGT, -1);
+                    break;
+                case GREATER_THAN:
+                    code.op(DCMPL, -3);
+                    isFalse = code.branch(IFLE, -1);
+                    break;
+                case GREATER_THAN_OR_EQUALS:
+                    code.op(DCMPL, -3);
+                    isFalse = code.branch(IFLT, -1);
+                    break;
+                default:
+                    throw new IllegalArgumentException("not a relational operator: "
+                                                       + node.operator);
+            }
+        }
+        code.pushInt(1);
+        int end = code.branch(GOTO, -1);
+        code.bind(isFalse);
+        code.pushInt(0);
+        code.bind(end);
+        code.invoke(INVOKEVIRTUAL, GRAMMAR, "onCondition", "(Z)Z", -1);
+        return null;
+    }
+
+    private void doubleToLongBits() {
+        code.invoke(INVOKESTATIC, "java/lang/Double", "doubleToLongBits", "(D)J", 0);
+    }
+
+    @Override
+    public Void visitBinary(BinaryExpression node) throws CompileException {
+        switch (node.operator) {
+            case PLUS:
+            case MINUS: // the right operand is already negated
+                code.op(DADD, -2);
+                break;
+            case MODULO:
+                code.op(DREM, -2);
+                break;
+            case MULT:
+                code.op(DMUL, -2);
+                break;
+            case EXP:
+                code.invoke(INVOKESTATIC, "java/lang/Math", "pow", "(DD)D", -2);
+                break;
+            default:
+                throw new IllegalArgumentException("not a binary operator: " + node.operator);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnary(UnaryExpression node) throws CompileException {
+        switch (node.operator) {
+            case DIVIDE: // the dividend was pushed before the operand
+                code.op(DDIV, -2);
+                break;
+            case MINUS:
+                code.op(DNEG, 0);
+                break;
+            case SQRT: {
+                // negative numbers have a square root of 0
+                code.op(DUP2, 2);
+                code.pushDouble(0.0);
+                code.op(DCMPG, -3);
+                int nonNegative = code.branch(IFGE, -1);
+                code.op(POP2, -2);
+                code.pushDouble(0.0);
+                code.bind(nonNegative);
+                code.invoke(INVOKESTATIC, "java/lang/Math", "sqrt", "(D)D", 0);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("not a unary operator: " + node.operator);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLiteral(Literal node) {
+        if (node.value instanceof Double) {
+            code.pushDouble((Double) node.value);
+        } else {
+            numeric = false;
+            code.pushDouble(0.0); // keeps the stack consistent until compilation stops
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Variable node) {
+        code.load(DLOAD, local(slots.get(node.identifier)));
+        return null;
+    }
+
+    @Override
+    public Void visitTemporary(Temporary node) throws CompileException {
+        // temporaries are locals after the variables and the exception of the handler
+        int local = local(variables.size() + 1 + node.index);
+        if (node.value != null) {
+            code.op(DUP2, 2); // the value is on top of the stack
+            code.store(DSTORE, local);
+        } else {
+            code.load(DLOAD, local);
+        }
+        return null;
+    }
+
+}
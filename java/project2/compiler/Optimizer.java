@@ -0,0 +1,867 @@
+package project2.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import project1.enums.TokenType;
+import project2.compiler.ast.AssignmentStatement;
+import project2.compiler.ast.BinaryExpression;
+import project2.compiler.ast.Condition;
+import project2.compiler.ast.Expression;
+import project2.compiler.ast.ExpressionWalker;
+import project2.compiler.ast.IfStatement;
+import project2.compiler.ast.Literal;
+import project2.compiler.ast.Node;
+import project2.compiler.ast.PrintStatement;
+import project2.compiler.ast.Program;
+import project2.compiler.ast.Statement;
+import project2.compiler.ast.Temporary;
+import project2.compiler.ast.UnaryExpression;
+import project2.compiler.ast.Variable;
+import project2.compiler.ast.Visitor;
+
+/**
+ * Simplifies parsed programs before they are lowered to Bytecode, so that the work that does not
+ * depend on the environment is done once instead of on every run. The statements are analyzed in
+ * order, keeping track of the variables that hold a constant or a number since their last
+ * assignment in the program; variables that were not assigned yet may hold anything.
+ * - variables that hold a constant are replaced by it, e.g. b in b = 15; PRINT(b * 2);
+ * - operators on literals are folded into a literal, e.g. (1+1)**(2+2) becomes 16 and
+ *   SQRT(-4) becomes 0, like the operators of the grammar compute them;
+ * - operations that leave a number unchanged are removed: x*1, 1*x, x/1, x**1, x-0 and -(-x);
+ * - conditions on literals become the constant condition TRUE or FALSE;
+ * - subexpressions computed again while their variables did not change, e.g. x*y in
+ *   a = x*y + 1; b = x*y - 1;, are computed once and kept in a Temporary, unless they are
+ *   computed first in the body of an IF statement, which is skipped if the condition is not met;
+ * - on request, assignments that are overwritten before they are read are removed, e.g. b = 30;
+ *   in b = 30; b = 15;.
+ * Nothing that reports an error is folded, reused or removed, e.g. "a"*1 or SQRT("a"), so errors
+ * are reported like before. Identities only apply to operands known to be numbers: a variable
+ * may hold a string, for which x*1 is an error and x+0 appends "0.0". x+0 is not simplified,
+ * since -0.0 + 0.0 is 0.0. Every statement but the removed assignments is kept, and IF
+ * statements keep their condition and body even when the result is known, so the hooks are
+ * called like before and the debug output is the same. Removed assignments call no hooks, so
+ * removing them is only for grammars that observe nothing but the output of PRINT statements,
+ * the errors and the final environment. Like Bytecode, optimized programs assume that the grammar
+ * does not override the operator methods; ProgramCache optimizes the programs it caches.
+ */
+public final class Optimizer {
+
+    /**
+     * Strings longer than this are not propagated, so that programs that keep appending to a
+     * string do not keep every intermediate string as a literal.
+     */
+    private static final int MAX_STRING_CONSTANT = 256;
+
+    // what analyze() knows about an expression
+    private static final int NUMBER = 1; // evaluates to a number, or stops the program
+    private static final int SAFE = 2; // reports no error
+
+    private Optimizer() {
+    }
+
+    /**
+     * Optimizes a parsed program, keeping all assignments. Internally calls the method
+     * optimize(program, true).
+     * @param program the program returned by CompilerGrammar.parse()
+     * @return the optimized program, or the program itself if nothing could be optimized
+     */
+    public static Program optimize(Program program) {
+        return optimize(program, true);
+    }
+
+    /**
+     * Optimizes a parsed program.
+     * @param program         the program returned by CompilerGrammar.parse()
+     * @param keepAssignments false to remove the assignments that are overwritten before they
+     *                        are read, whose hooks are then not called
+     * @return the optimized program, or the program itself if nothing could be optimized
+     */
+    public static Program optimize(Program program, boolean keepAssignments) {
+        List<Statement> statements = new ArrayList<>(program.statements);
+        int temporaries;
+        try {
+            boolean[] safe = fold(statements);
+            if (!keepAssignments)
+                removeDeadAssignments(statements, safe);
+            temporaries = reuse(statements, program.temporaries);
+        } catch (CompileException e) {
+            throw new IllegalStateException(e); // the passes do not throw
+        }
+        if (temporaries == program.temporaries && statements.equals(program.statements))
+            return program;
+        return new Program(statements, temporaries);
+    }
+
+    /**
+     * Propagates constants and folds every statement in place.
+     * @return whether every statement reports no error
+     */
+    private static boolean[] fold(List<Statement> statements) throws CompileException {
+        State state = new State();
+        Folder folder = new Folder(state);
+        boolean[] safe = new boolean[statements.size()];
+        for (int i = 0; i < statements.size(); ++i) {
+            Statement statement = (Statement) statements.get(i).accept(folder);
+            statements.set(i, statement);
+            safe[i] = state.isSafe(statement);
+            state.update(statement);
+        }
+        return safe;
+    }
+
+    /**
+     * Removes the assignments whose variable is assigned again before it is read. The program
+     * can only stop at a statement that reports an error, so no assignment before such a
+     * statement is removed: its value could be the final one.
+     */
+    private static void removeDeadAssignments(List<Statement> statements, boolean[] safe)
+        throws CompileException {
+        Reads reads = new Reads();
+        for (int i = statements.size() - 1; i >= 0; --i) {
+            Statement statement = statements.get(i);
+            if (!safe[i]) {
+                reads.overwritten.clear();
+                continue;
+            }
+            AssignmentStatement assignment = null;
+            boolean unconditional = false;
+            if (statement instanceof AssignmentStatement) {
+                assignment = (AssignmentStatement) statement;
+                unconditional = true;
+            } else if (statement instanceof IfStatement) {
+                IfStatement ifStatement = (IfStatement) statement;
+                if (ifStatement.body instanceof AssignmentStatement) {
+                    assignment = (AssignmentStatement) ifStatement.body;
+                    unconditional = ifStatement.condition == Condition.TRUE;
+                }
+            }
+            if (assignment != null && reads.overwritten.contains(assignment.identifier)) {
+                statements.set(i, null);
+                continue;
+            }
+            if (unconditional)
+                reads.overwritten.add(assignment.identifier);
+            statement.accept(reads);
+        }
+        statements.removeIf(Objects::isNull);
+    }
+
+    /**
+     * Keeps the values of the subexpressions computed more than once in temporaries.
+     * @param temporaries the number of temporaries already used by the statements
+     * @return the number of temporaries used by the statements
+     */
+    private static int reuse(List<Statement> statements, int temporaries)
+        throws CompileException {
+        Numbering numbering = new Numbering();
+        for (Statement statement : statements)
+            numbering.count(statement);
+        if (numbering.reused.isEmpty())
+            return temporaries;
+        Reuser reuser = new Reuser(numbering, temporaries);
+        for (int i = 0; i < statements.size(); ++i)
+            statements.set(i, (Statement) statements.get(i).accept(reuser));
+        return reuser.temporaries;
+    }
+
+    private static boolean isConstant(Expression expression, double value) {
+        return expression instanceof Literal
+            && Double.valueOf(value).equals(((Literal) expression).value);
+    }
+
+    /**
+     * What is known about the variables since their last assignment in the program.
+     */
+    private static class State {
+
+        final Map<String, Object> constants = new HashMap<>();
+        final Set<String> numbers = new HashSet<>();
+
+        final ExpressionWalker walker = new ExpressionWalker();
+        int[] flags = new int[16];
+
+        /**
+         * Finds out if an expression evaluates to a number and if it reports an error, bottom up.
+         * @return NUMBER and SAFE if they hold
+         */
+        int analyze(Expression expression) {
+            int size = 0;
+            walker.start(expression);
+            while (walker.next()) {
+                if (walker.isEntering())
+                    continue;
+                Expression node = walker.node();
+                int result;
+                if (node instanceof Literal) {
+                    result = ((Literal) node).value instanceof Double ? NUMBER | SAFE : SAFE;
+                } else if (node instanceof Variable) {
+                    result = analyzeVariable(((Variable) node).identifier);
+                } else if (node instanceof Temporary) {
+                    result = ((Temporary) node).value != null ? flags[--size] : SAFE;
+                } else if (node instanceof UnaryExpression) {
+                    result = analyzeUnary(((UnaryExpression) node).operator, flags[--size]);
+                } else {
+                    size -= 2;
+                    result = analyzeBinary(((BinaryExpression) node).operator, flags[size],
+                                           flags[size + 1]);
+                }
+                if (size == flags.length)
+                    flags = Arrays.copyOf(flags, size * 2);
+                flags[size++] = result;
+            }
+            return flags[0];
+        }
+
+        int analyzeVariable(String identifier) {
+            return numbers.contains(identifier) ? NUMBER | SAFE : SAFE;
+        }
+
+        static int analyzeUnary(TokenType operator, int operand) {
+            if (operand == (NUMBER | SAFE))
+                return NUMBER | SAFE;
+            // SQRT gives 0 for strings, negate and invert give the string back
+            return operator == TokenType.SQRT ? NUMBER : operand & NUMBER;
+        }
+
+        static int analyzeBinary(TokenType operator, int left, int right) {
+            if (operator == TokenType.PLUS)
+                return left & right; // appends anything to strings
+            // the others give 0 for strings or throw
+            return (left & right) == (NUMBER | SAFE) ? NUMBER | SAFE : NUMBER;
+        }
+
+        boolean isNumber(Expression expression) {
+            return (analyze(expression) & NUMBER) != 0;
+        }
+
+        boolean isSafe(Node node) {
+            if (node instanceof PrintStatement)
+                return isSafe(((PrintStatement) node).expression);
+            if (node instanceof AssignmentStatement)
+                return isSafe(((AssignmentStatement) node).value);
+            if (node instanceof IfStatement)
+                return isSafe(((IfStatement) node).condition) && isSafe(((IfStatement) node).body);
+            if (node instanceof Condition) {
+                Condition condition = (Condition) node;
+                // comparisons report no error
+                return condition.isConstant() || isSafe(condition.lhs) && isSafe(condition.rhs);
+            }
+            return (analyze((Expression) node) & SAFE) != 0;
+        }
+
+        /**
+         * Records the assignment of a statement, after its expressions were evaluated.
+         */
+        void update(Statement statement) {
+            if (statement instanceof AssignmentStatement) {
+                assign((AssignmentStatement) statement, true);
+            } else if (statement instanceof IfStatement) {
+                IfStatement ifStatement = (IfStatement) statement;
+                if (ifStatement.body instanceof AssignmentStatement
+                    && ifStatement.condition != Condition.FALSE)
+                    assign((AssignmentStatement) ifStatement.body,
+                           ifStatement.condition == Condition.TRUE);
+            }
+        }
+
+        private void assign(AssignmentStatement assignment, boolean unconditional) {
+            String identifier = assignment.identifier;
+            Object constant = null;
+            if (assignment.value instanceof Literal) {
+                constant = ((Literal) assignment.value).value;
+                if (constant instanceof String
+                    && ((String) constant).length() > MAX_STRING_CONSTANT)
+                    constant = null;
+            }
+            boolean number = isNumber(assignment.value);
+            if (unconditional) {
+                if (constant != null)
+                    constants.put(identifier, constant);
+                else
+                    constants.remove(identifier);
+                if (number)
+                    numbers.add(identifier);
+                else
+                    numbers.remove(identifier);
+            } else {
+                // the variable keeps its value if the condition is not met
+                if (constant == null || !constant.equals(constants.get(identifier)))
+                    constants.remove(identifier);
+                if (!number)
+                    numbers.remove(identifier);
+            }
+        }
+    }
+
+    /**
+     * Folds the nodes bottom up, replacing the variables that hold a constant, and returns the
+     * same node when nothing changed. Every node is visited once its operands are folded, and
+     * takes them from the list of folded operands.
+     */
+    private static class Folder implements Visitor<Node> {
+
+        final State state;
+        final ExpressionWalker walker = new ExpressionWalker();
+        final List<Expression> folded = new ArrayList<>();
+
+        Folder(State state) {
+            this.state = state;
+        }
+
+        Expression fold(Expression expression) throws CompileException {
+            walker.start(expression);
+            while (walker.next())
+                if (!walker.isEntering())
+                    folded.add((Expression) walker.node().accept(this));
+            return operand();
+        }
+
+        private Expression operand() {
+            return folded.remove(folded.size() - 1);
+        }
+
+        @Override
+        public Node visitPrint(PrintStatement node) throws CompileException {
+            Expression expression = fold(node.expression);
+            return expression == node.expression ? node : new PrintStatement(expression);
+        }
+
+        @Override
+        public Node visitAssignment(AssignmentStatement node) throws CompileException {
+            Expression value = fold(node.value);
+            return value == node.value ? node : new AssignmentStatement(node.identifier, value);
+        }
+
+        @Override
+        public Node visitIf(IfStatement node) throws CompileException {
+            Condition condition = (Condition) node.condition.accept(this);
+            Statement body = (Statement) node.body.accept(this);
+            return condition == node.condition && body == node.body
+                ? node : new IfStatement(condition, body);
+        }
+
+        @Override
+        public Node visitCondition(Condition node) throws CompileException {
+            if (node.isConstant())
+                return node;
+            Expression lhs = fold(node.lhs);
+            Expression rhs = fold(node.rhs);
+            if (lhs instanceof Literal && rhs instanceof Literal)
+                return Condition.of(compare(node.operator, ((Literal) lhs).value,
+                                            ((Literal) rhs).value));
+            return lhs == node.lhs && rhs == node.rhs
+                ? node : new Condition(node.operator, lhs, rhs);
+        }
+
+        @Override
+        public Node visitBinary(BinaryExpression node) throws CompileException {
+            Expression right = operand();
+            Expression left = operand();
+            if (left instanceof Literal && right instanceof Literal) {
+                Object value = binary(node.operator, ((Literal) left).value,
+                                      ((Literal) right).value);
+                if (value != null)
+                    return new Literal(value);
+            }
+            switch (node.operator) {
+                case PLUS:
+                case MINUS: // the right operand is already negated
+                    if (isConstant(right, -0.0) && state.isNumber(left))
+                        return left;
+                    if (isConstant(left, -0.0) && state.isNumber(right))
+                        return right;
+                    break;
+                case MULT:
+                    if (isConstant(right, 1.0) && state.isNumber(left))
+                        return left;
+                    if (isConstant(left, 1.0) && state.isNumber(right))
+                        return right;
+                    break;
+                case EXP:
+                    if (isConstant(right, 1.0) && state.isNumber(left))
+                        return left;
+                    break;
+            }
+            return left == node.left && right == node.right
+                ? node : new BinaryExpression(node.operator, left, right);
+        }
+
+        @Override
+        public Node visitUnary(UnaryExpression node) throws CompileException {
+            Expression operand = operand();
+            if (operand instanceof Literal && ((Literal) operand).value instanceof Double) {
+                double value = (Double) ((Literal) operand).value;
+                switch (node.operator) {
+                    case DIVIDE:
+                        return new Literal(1.0 / value);
+                    case MINUS:
+                        return new Literal(- value);
+                    case SQRT:
+                        return new Literal(value < 0 ? 0.0 : Math.sqrt(value));
+                }
+            }
+            if (node.operator == TokenType.MINUS && operand instanceof UnaryExpression) {
+                UnaryExpression negated = (UnaryExpression) operand;
+                if (negated.operator == TokenType.MINUS && state.isNumber(negated.operand))
+                    return negated.operand;
+            }
+            return operand == node.operand ? node : new UnaryExpression(node.operator, operand);
+        }
+
+        @Override
+        public Node visitLiteral(Literal node) {
+            return node;
+        }
+
+        @Override
+        public Node visitVariable(Variable node) {
+            Object constant = state.constants.get(node.identifier);
+            return constant != null ? new Literal(constant) : node;
+        }
+
+        @Override
+        public Node visitTemporary(Temporary node) throws CompileException {
+            if (node.value == null)
+                return node;
+            Expression value = operand();
+            return value == node.value ? node : new Temporary(node.index, value);
+        }
+
+        /**
+         * Applies a binary operator to literals like the grammar does.
+         * @return the result, or null if the operator reports an error on these operands
+         */
+        private static Object binary(TokenType operator, Object a, Object b) {
+            boolean numbers = a instanceof Double && b instanceof Double;
+            if (operator == TokenType.PLUS)
+                return numbers ? (Object) ((double) a + (double) b) : "" + a + b;
+            if (!numbers)
+                return null;
+            switch (operator) {
+                case MINUS:
+                    return (double) a + (double) b;
+                case MODULO:
+                    return (double) a % (double) b;
+                case MULT:
+                    return (double) a * (double) b;
+                case EXP:
+                    return Math.pow((double) a, (double) b);
+                default:
+                    throw new IllegalArgumentException("not a binary operator: " + operator);
+            }
+        }
+
+        /**
+         * Compares literals like the grammar does.
+         */
+        private static boolean compare(TokenType operator, Object lhs, Object rhs) {
+            if (operator == TokenType.EQUALS)
+                return lhs.equals(rhs);
+            if (operator == TokenType.NOT_EQUALS)
+                return !lhs.equals(rhs);
+            if (lhs instanceof String || rhs instanceof String) {
+                int comparison = ("" + lhs).compareTo("" + rhs);
+                switch (operator) {
+                    case LESS_THAN:
+                        return comparison < 0;
+                    case LESS_THAN_OR_EQUALS:
+                        return comparison <= 0;
+                    case GREATER_THAN:
+                        return comparison > 0;
+                    case GREATER_THAN_OR_EQUALS:
+                        return comparison >= 0;
+                }
+            } else {
+                // not Double.compare(), which orders -0.0 before 0.0 and NaN after everything
+                double a = (double) lhs;
+                double b = (double) rhs;
+                switch (operator) {
+                    case LESS_THAN:
+                        return a < b;
+                    case LESS_THAN_OR_EQUALS:
+                        return a <= b;
+                    case GREATER_THAN:
+                        return a > b;
+                    case GREATER_THAN_OR_EQUALS:
+                        return a >= b;
+                }
+            }
+            throw new IllegalArgumentException("not a relational operator: " + operator);
+        }
+    }
+
+    /**
+     * Removes the variables read by the visited statements from the overwritten variables.
+     */
+    private static class Reads implements Visitor<Void> {
+
+        /**
+         * The variables assigned by the statements visited so far before they are read.
+         */
+        final Set<String> overwritten = new HashSet<>();
+
+        final ExpressionWalker walker = new ExpressionWalker();
+
+        Void read(Expression expression) throws CompileException {
+            walker.start(expression);
+            while (walker.next())
+                if (!walker.isEntering())
+                    walker.node().accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitPrint(PrintStatement node) throws CompileException {
+            return read(node.expression);
+        }
+
+        @Override
+        public Void visitAssignment(AssignmentStatement node) throws CompileException {
+            return read(node.value);
+        }
+
+        @Override
+        public Void visitIf(IfStatement node) throws CompileException {
+            node.condition.accept(this);
+            return node.body.accept(this);
+        }
+
+        @Override
+        public Void visitCondition(Condition node) throws CompileException {
+            if (!node.isConstant()) {
+                read(node.lhs);
+                read(node.rhs);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitBinary(BinaryExpression node) {
+            return null;
+        }
+
+        @Override
+        public Void visitUnary(UnaryExpression node) {
+            return null;
+        }
+
+        @Override
+        public Void visitLiteral(Literal node) {
+            return null;
+        }
+
+        @Override
+        public Void visitVariable(Variable node) {
+            overwritten.remove(node.identifier);
+            return null;
+        }
+
+        @Override
+        public Void visitTemporary(Temporary node) {
+            return null;
+        }
+    }
+
+    /**
+     * Numbers the values of the expressions of the statements in order, so that expressions with
+     * the same operators on the same values get the same number, and counts the values computed
+     * again while they are still available. The value of a variable changes at every
+     * assignment, so expressions using it get new numbers after that.
+     */
+    private static class Numbering {
+
+        final State state = new State();
+        final Map<String, Integer> numbers = new HashMap<>();
+        final Map<String, Integer> variables = new HashMap<>();
+        int next = 0;
+
+        // the numbers of the operands being walked, with the flags of what State.analyze()
+        // finds out about them
+        final ExpressionWalker walker = new ExpressionWalker();
+        int[] operandNumbers = new int[16];
+        int[] operandFlags = new int[16];
+
+        /**
+         * The number of every expression that could be kept in a temporary: an operator that
+         * reports no error.
+         */
+        final Map<Expression, Integer> candidates = new IdentityHashMap<>();
+        final Set<Integer> computed = new HashSet<>();
+        final Set<Integer> reused = new HashSet<>();
+
+        /**
+         * The values computed first in the body of the IF statement being counted, which are
+         * not available after it, since the body is skipped if the condition is not met. Bodies
+         * under TRUE are no exception, since onCondition() decides if they are skipped.
+         */
+        final List<Integer> computedInBody = new ArrayList<>();
+        boolean inBody = false;
+
+        void count(Statement statement) {
+            if (statement instanceof PrintStatement) {
+                count(((PrintStatement) statement).expression);
+            } else if (statement instanceof AssignmentStatement) {
+                AssignmentStatement assignment = (AssignmentStatement) statement;
+                variables.put(assignment.identifier, count(assignment.value));
+            } else {
+                IfStatement ifStatement = (IfStatement) statement;
+                Condition condition = ifStatement.condition;
+                if (!condition.isConstant()) {
+                    count(condition.lhs);
+                    count(condition.rhs);
+                }
+                inBody = true;
+                if (ifStatement.body instanceof PrintStatement) {
+                    count(((PrintStatement) ifStatement.body).expression);
+                } else {
+                    AssignmentStatement assignment = (AssignmentStatement) ifStatement.body;
+                    int value = count(assignment.value);
+                    if (condition == Condition.TRUE)
+                        variables.put(assignment.identifier, value);
+                    else if (condition != Condition.FALSE)
+                        variables.put(assignment.identifier, next++);
+                }
+                inBody = false;
+                computed.removeAll(computedInBody);
+                computedInBody.clear();
+            }
+            state.update(statement);
+        }
+
+        /**
+         * Numbers an expression, then counts its value and the values of its subexpressions
+         * that are not computed again.
+         * @return the number of the value of the expression
+         */
+        int count(Expression expression) {
+            int number = number(expression);
+            mark(expression);
+            return number;
+        }
+
+        private void mark(Expression expression) {
+            walker.start(expression);
+            while (walker.next()) {
+                if (!walker.isEntering())
+                    continue;
+                Expression node = walker.node();
+                Integer number = candidates.get(node);
+                if (number != null) {
+                    if (!computed.add(number)) {
+                        reused.add(number);
+                        walker.skip();
+                        continue;
+                    }
+                    if (inBody)
+                        computedInBody.add(number);
+                }
+                if (node instanceof Temporary)
+                    walker.skip();
+            }
+        }
+
+        private int number(Expression expression) {
+            int size = 0;
+            walker.start(expression);
+            while (walker.next()) {
+                Expression node = walker.node();
+                if (walker.isEntering()) {
+                    // temporaries of an earlier optimization are not numbered inside
+                    if (node instanceof Temporary)
+                        walker.skip();
+                    continue;
+                }
+                String key = null;
+                int number = -1;
+                int flags;
+                if (node instanceof Literal) {
+                    flags = state.analyze(node);
+                    Object value = ((Literal) node).value;
+                    key = (value instanceof Double ? "N" : "S") + value;
+                } else if (node instanceof Variable) {
+                    String identifier = ((Variable) node).identifier;
+                    flags = state.analyzeVariable(identifier);
+                    number = variables.computeIfAbsent(identifier, unused -> next++);
+                } else if (node instanceof UnaryExpression) {
+                    UnaryExpression unary = (UnaryExpression) node;
+                    --size;
+                    flags = State.analyzeUnary(unary.operator, operandFlags[size]);
+                    key = unary.operator + " " + operandNumbers[size];
+                } else if (node instanceof BinaryExpression) {
+                    BinaryExpression binary = (BinaryExpression) node;
+                    size -= 2;
+                    flags = State.analyzeBinary(binary.operator, operandFlags[size],
+                                                operandFlags[size + 1]);
+                    key = binary.operator + " " + operandNumbers[size] + " "
+                        + operandNumbers[size + 1];
+                } else {
+                    flags = state.analyze(node);
+                    number = next++; // a temporary of an earlier optimization
+                }
+                if (key != null) {
+                    Integer known = numbers.get(key);
+                    if (known == null)
+                        numbers.put(key, known = next++);
+                    number = known;
+                    if (!(node instanceof Literal) && (flags & SAFE) != 0)
+                        candidates.put(node, number);
+                }
+                if (size == operandNumbers.length) {
+                    operandNumbers = Arrays.copyOf(operandNumbers, size * 2);
+                    operandFlags = Arrays.copyOf(operandFlags, size * 2);
+                }
+                operandNumbers[size] = number;
+                operandFlags[size++] = flags;
+            }
+            return operandNumbers[0];
+        }
+    }
+
+    /**
+     * Replaces the values computed again with temporaries, keeping them where they are computed
+     * first. The temporary of a node is decided when it is entered, and the node is rebuilt from
+     * its rebuilt operands when it is left.
+     */
+    private static class Reuser implements Visitor<Node> {
+
+        final Numbering numbering;
+        final Map<Integer, Integer> kept = new HashMap<>();
+        final List<Integer> keptInBody = new ArrayList<>();
+        boolean inBody = false;
+        int temporaries;
+
+        final ExpressionWalker walker = new ExpressionWalker();
+        final List<Expression> rebuilt = new ArrayList<>();
+
+        /**
+         * What is done with the nodes being walked, from the outermost: -1 for nothing, twice
+         * the temporary to keep the node in, or twice the temporary plus one to reuse instead of
+         * the node.
+         */
+        int[] actions = new int[16];
+        int depth = 0;
+
+        Reuser(Numbering numbering, int temporaries) {
+            this.numbering = numbering;
+            this.temporaries = temporaries;
+        }
+
+        Expression reuse(Expression expression) throws CompileException {
+            walker.start(expression);
+            while (walker.next()) {
+                Expression node = walker.node();
+                if (walker.isEntering()) {
+                    if (depth == actions.length)
+                        actions = Arrays.copyOf(actions, depth * 2);
+                    actions[depth++] = enter(node);
+                    continue;
+                }
+                int action = actions[--depth];
+                if (action >= 0 && action % 2 == 1) {
+                    rebuilt.add(new Temporary(action / 2, null));
+                    continue;
+                }
+                Expression result = (Expression) node.accept(this);
+                rebuilt.add(action >= 0 ? new Temporary(action / 2, result) : result);
+            }
+            return operand();
+        }
+
+        private int enter(Expression node) {
+            Integer number = numbering.candidates.get(node);
+            if (number == null || !numbering.reused.contains(number)) {
+                // temporaries of an earlier optimization are kept as they are
+                if (node instanceof Temporary)
+                    walker.skip();
+                return -1;
+            }
+            Integer temporary = kept.get(number);
+            if (temporary != null) {
+                walker.skip();
+                return 2 * temporary + 1;
+            }
+            kept.put(number, temporary = temporaries++);
+            if (inBody)
+                keptInBody.add(number);
+            return 2 * temporary;
+        }
+
+        private Expression operand() {
+            return rebuilt.remove(rebuilt.size() - 1);
+        }
+
+        @Override
+        public Node visitPrint(PrintStatement node) throws CompileException {
+            Expression expression = reuse(node.expression);
+            return expression == node.expression ? node : new PrintStatement(expression);
+        }
+
+        @Override
+        public Node visitAssignment(AssignmentStatement node) throws CompileException {
+            Expression value = reuse(node.value);
+            return value == node.value ? node : new AssignmentStatement(node.identifier, value);
+        }
+
+        @Override
+        public Node visitIf(IfStatement node) throws CompileException {
+            Condition condition = (Condition) node.condition.accept(this);
+            // like Numbering, the values kept in a body are computed again after it
+            inBody = true;
+            Statement body = (Statement) node.body.accept(this);
+            inBody = false;
+            for (Integer number : keptInBody)
+                kept.remove(number);
+            keptInBody.clear();
+            return condition == node.condition && body == node.body
+                ? node : new IfStatement(condition, body);
+        }
+
+        @Override
+        public Node visitCondition(Condition node) throws CompileException {
+            if (node.isConstant())
+                return node;
+            Expression lhs = reuse(node.lhs);
+            Expression rhs = reuse(node.rhs);
+            return lhs == node.lhs && rhs == node.rhs
+                ? node : new Condition(node.operator, lhs, rhs);
+        }
+
+        @Override
+        public Node visitBinary(BinaryExpression node) throws CompileException {
+            Expression right = operand();
+            Expression left = operand();
+            return left == node.left && right == node.right
+                ? node : new BinaryExpression(node.operator, left, right);
+        }
+
+        @Override
+        public Node visitUnary(UnaryExpression node) throws CompileException {
+            Expression operand = operand();
+            return operand == node.operand ? node : new UnaryExpression(node.operator, operand);
+        }
+
+        @Override
+        public Node visitLiteral(Literal node) {
+            return node;
+        }
+
+        @Override
+        public Node visitVariable(Variable node) {
+            return node;
+        }
+
+        @Override
+        public Node visitTemporary(Temporary node) {
+            return node;
+        }
+    }
+
+}
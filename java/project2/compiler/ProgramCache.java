@@ -0,0 +1,186 @@
+package project2.compiler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import project2.compiler.ast.Program;
+
+/**
+ * Runs programs that are run repeatedly, keeping their compiled forms by source text. The first
+ * runs of a program run its bytecode on the VirtualMachine. Once a program has run promotion
+ * threshold times, it is compiled to JVM bytecode by the JitCompiler, unless it uses strings or
+ * is too large or fails to compile, in which case it stays on the VirtualMachine. Programs that
+ * cannot be parsed, optimized or compiled to bytecode, whether because of a syntax error or any
+ * other failure, are compiled by the grammar on every run, so errors are reported exactly like
+ * compile() does.
+ * Parsed programs are simplified by the Optimizer before they are compiled to bytecode, which
+ * can also remove the assignments that are overwritten before they are read.
+ * The least recently run programs are evicted when the cache is full; nothing else refers to
+ * their hidden classes, so those can be unloaded. A cache can be shared by threads that run
+ * programs with grammars of their own.
+ */
+public class ProgramCache {
+
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final int DEFAULT_PROMOTION_THRESHOLD = 16;
+
+    private final int promotionThreshold;
+    private final boolean keepAssignments;
+    private final Map<String, Entry> entries;
+
+    /**
+     * Creates a cache with the default capacity and promotion threshold.
+     */
+    public ProgramCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_PROMOTION_THRESHOLD);
+    }
+
+    /**
+     * Creates a cache that keeps all assignments.
+     * @param capacity the number of programs kept before the least recently run is evicted
+     * @param promotionThreshold the number of runs after which a program is compiled to JVM
+     *                           bytecode, 0 to never compile programs to JVM bytecode
+     */
+    public ProgramCache(int capacity, int promotionThreshold) {
+        this(capacity, promotionThreshold, true);
+    }
+
+    /**
+     * Creates a cache.
+     * @param capacity the number of programs kept before the least recently run is evicted
+     * @param promotionThreshold the number of runs after which a program is compiled to JVM
+     *                           bytecode, 0 to never compile programs to JVM bytecode
+     * @param keepAssignments false to remove the assignments that are overwritten before they
+     *                        are read, for grammars that do not need their hooks
+     */
+    public ProgramCache(int capacity, int promotionThreshold, boolean keepAssignments) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.promotionThreshold = promotionThreshold;
+        this.keepAssignments = keepAssignments;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Runs a program with a grammar, keeping the environment from previously run programs.
+     * Internally calls the method execute(grammar, program, true).
+     *
+     * @param grammar the grammar whose environment and hooks are used
+     * @param program the source text of the program
+     * @throws CompileException if the program generated errors
+     */
+    public void execute(CompilerGrammar grammar, String program) throws CompileException {
+        execute(grammar, program, true);
+    }
+
+    /**
+     * Runs a program with a grammar, with the same results as grammar.compile(program), except
+     * that operator methods overridden by the grammar are not called on numbers.
+     *
+     * @param grammar      the grammar whose environment and hooks are used
+     * @param program      the source text of the program
+     * @param keepBindings flag if previously compiled environment should be kept or not
+     * @throws CompileException if the program generated errors
+     */
+    public void execute(CompilerGrammar grammar, String program, boolean keepBindings)
+        throws CompileException {
+        Entry entry = getEntry(grammar, program);
+        if (entry.bytecode == null) {
+            grammar.compile(program, keepBindings);
+            return;
+        }
+        if (!keepBindings)
+            grammar.setEnvironment(grammar.onCreateEnvironment());
+        CompiledProgram compiled = entry.promote();
+        if (compiled == null || !compiled.run(grammar))
+            grammar.execute(entry.bytecode);
+    }
+
+    /**
+     * Checks if a program was compiled to JVM bytecode.
+     * @param program the source text of the program
+     * @return true if the program is cached and was compiled to JVM bytecode
+     */
+    public synchronized boolean isCompiled(String program) {
+        Entry entry = entries.get(program);
+        return entry != null && entry.compiled != null;
+    }
+
+    /**
+     * Getter for the number of cached programs.
+     * @return the number of cached programs
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Evicts all programs.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private Entry getEntry(CompilerGrammar grammar, String program) {
+        synchronized (this) {
+            Entry entry = entries.get(program);
+            if (entry != null)
+                return entry;
+        }
+        // parse without holding the lock, so threads running new programs do not wait for each
+        // other; if two threads parse the same program, the first entry stored is kept
+        Program optimized;
+        Bytecode bytecode;
+        try {
+            optimized = Optimizer.optimize(grammar.parse(program), keepAssignments);
+            bytecode = Bytecode.compile(optimized);
+        } catch (CompileException | RuntimeException | StackOverflowError e) {
+            optimized = null;
+            bytecode = null;
+        }
+        Entry entry = new Entry(optimized, bytecode);
+        synchronized (this) {
+            Entry stored = entries.putIfAbsent(program, entry);
+            return stored != null ? stored : entry;
+        }
+    }
+
+    /**
+     * The compiled forms of a cached program.
+     */
+    private class Entry {
+
+        final Program program;
+        final Bytecode bytecode;
+        int runs = 0;
+        boolean promoted = false;
+        volatile CompiledProgram compiled = null;
+
+        Entry(Program program, Bytecode bytecode) {
+            this.program = program;
+            this.bytecode = bytecode;
+        }
+
+        /**
+         * Counts a run, and compiles the program once it reaches the promotion threshold.
+         * @return the compiled program, null if it is not compiled
+         */
+        synchronized CompiledProgram promote() {
+            if (!promoted && promotionThreshold > 0 && ++runs >= promotionThreshold) {
+                promoted = true;
+                try {
+                    compiled = JitCompiler.compile(program, bytecode);
+                } catch (RuntimeException | StackOverflowError e) {
+                    compiled = null; // the program keeps running on the VirtualMachine
+                }
+            }
+            return compiled;
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+package project2.compiler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An environment that resolves identifiers to slots of an array, so lookups and bindings take
+ * constant time however many bindings were made, and only the latest value of every identifier is
+ * kept. Like Environment, define() returns a new environment and leaves the old one unchanged, so
+ * an old environment can still be restored, e.g. to go back to the bindings from before a program
+ * ran.
+ *
+ * All environments derived from the same empty environment share one array, which holds the
+ * values of the environment used last. Every other environment records the difference with a
+ * newer one, and using it moves the array back to it by undoing the differences in between.
+ * Restoring the environment from before the last binding therefore costs one step. Nothing refers
+ * to environments older than the one in use, so they can be garbage collected once dropped.
+ *
+ * Because using an environment changes the storage it shares with the others, environments derived
+ * from the same empty environment must be used from one thread at a time; fork() copies an
+ * environment for another thread. The parent of every slot environment is null: the bindings are
+ * not kept as a list.
+ */
+public class SlotEnvironment extends Environment {
+
+    /**
+     * Marks a slot whose identifier was bound to null, to tell it apart from an unbound slot.
+     */
+    private static final Object NULL = new Object();
+
+    /**
+     * The slot of every identifier, shared by all environments derived from the same one.
+     */
+    private final Map<String, Integer> slots;
+
+    /**
+     * The values of the slots if this environment is the one used last, null otherwise.
+     */
+    private Object[] values;
+
+    /**
+     * Otherwise, this environment is newer with the value of diffSlot set back to diffValue.
+     */
+    private SlotEnvironment newer;
+    private int diffSlot;
+    private Object diffValue;
+
+    /**
+     * Creates a new empty environment.
+     */
+    public SlotEnvironment() {
+        super();
+        this.slots = new HashMap<>();
+        this.values = new Object[16];
+    }
+
+    private SlotEnvironment(String identifier, Object value, Map<String, Integer> slots,
+                            Object[] values) {
+        super(identifier, value, null);
+        this.slots = slots;
+        this.values = values;
+    }
+
+    /**
+     * Creates a new environment that binds a value to an identifier, replacing its previous
+     * value. This environment is unchanged.
+     * @param identifier the identifier for the value to be bound
+     * @param value the value to be bound
+     * @return a new SlotEnvironment with the binding
+     */
+    @Override
+    public Environment define(String identifier, Object value) {
+        Object[] values = reroot();
+        Integer slot = slots.get(identifier);
+        if (slot == null) {
+            slot = slots.size();
+            slots.put(identifier, slot);
+            if (slot == values.length)
+                values = Arrays.copyOf(values, values.length * 2);
+        }
+        SlotEnvironment environment = new SlotEnvironment(identifier, value, slots, values);
+        // this environment becomes the difference with the new one
+        this.values = null;
+        this.newer = environment;
+        this.diffSlot = slot;
+        this.diffValue = values[slot];
+        values[slot] = value == null ? NULL : value;
+        return environment;
+    }
+
+    /**
+     * Checks whether an identifier is defined in the current environment.
+     * @param identifier the identifier to check
+     * @return true if the identifier exists in the current environment
+     */
+    @Override
+    public boolean isDefined(String identifier) {
+        Integer slot = slots.get(identifier);
+        return slot != null && reroot()[slot] != null;
+    }
+
+    /**
+     * Gets the bound value of the identifier in the current environment. Returns null if the
+     * identifier is not bound.
+     * @param identifier the identifier to find
+     * @return the bound value associated with this identifier, null if undefined
+     */
+    @Override
+    public Object getValue(String identifier) {
+        Integer slot = slots.get(identifier);
+        if (slot == null)
+            return null;
+        Object value = reroot()[slot];
+        return value == NULL ? null : value;
+    }
+
+    /**
+     * Gets a copy of this environment with storage of its own, which can be used from another
+     * thread. Copying takes time linear in the number of identifiers, and must be done by the
+     * thread using this environment.
+     * @return a copy of this environment
+     */
+    @Override
+    public Environment fork() {
+        Object[] values = reroot();
+        return new SlotEnvironment(identifier, value, new HashMap<>(slots), values.clone());
+    }
+
+    /**
+     * Makes this environment hold the values array, undoing the differences of the newer
+     * environments in between.
+     * @return the values of this environment
+     */
+    private Object[] reroot() {
+        if (values != null)
+            return values;
+
+        // find the environment holding the array, reversing the links on the way
+        SlotEnvironment previous = null;
+        SlotEnvironment environment = this;
+        while (environment.values == null) {
+            SlotEnvironment next = environment.newer;
+            environment.newer = previous;
+            previous = environment;
+            environment = next;
+        }
+
+        // walk back, moving the array one environment older at every step
+        Object[] values = environment.values;
+        while (previous != null) {
+            int slot = previous.diffSlot;
+            Object value = previous.diffValue;
+            environment.values = null;
+            environment.diffSlot = slot;
+            environment.diffValue = values[slot];
+            values[slot] = value;
+            SlotEnvironment older = previous.newer;
+            environment.newer = previous;
+            previous.values = values;
+            previous.newer = null;
+            previous.diffValue = null;
+            environment = previous;
+            previous = older;
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,270 @@
+package project2.compiler;
+
+import project1.enums.TokenType;
+
+import static project2.compiler.Bytecode.*;
+
+/**
+ * A dispatch loop that runs Bytecode for a CompilerGrammar. Numbers stay unboxed in a double
+ * stack, with a parallel reference stack that holds Strings (null for numbers). Operations on two
+ * numbers are done in place; any other operands go through the operator methods of the grammar,
+ * which report errors exactly like the grammar does. Values are only boxed for the hooks.
+ * Variables live in slots: they are read from the environment before the program runs, and the
+ * assigned ones are defined in the environment after it stops.
+ */
+final class VirtualMachine {
+
+    private final CompilerGrammar grammar;
+    private final Bytecode bytecode;
+
+    // operand stack
+    private final double[] numbers;
+    private final Object[] references;
+    private int sp = 0;
+
+    // variable slots
+    private final double[] slotNumbers;
+    private final Object[] slotReferences;
+    private final boolean[] assigned;
+
+    // temporaries
+    private final double[] temporaryNumbers;
+    private final Object[] temporaryReferences;
+
+    VirtualMachine(CompilerGrammar grammar, Bytecode bytecode) {
+        this.grammar = grammar;
+        this.bytecode = bytecode;
+        this.numbers = new double[bytecode.maxStack];
+        this.references = new Object[bytecode.maxStack];
+        int slots = bytecode.variables.length;
+        this.slotNumbers = new double[slots];
+        this.slotReferences = new Object[slots];
+        this.assigned = new boolean[slots];
+        this.temporaryNumbers = new double[bytecode.temporaries];
+        this.temporaryReferences = new Object[bytecode.temporaries];
+    }
+
+    /**
+     * Runs the bytecode once.
+     * @throws CompileException if the program generated errors while running
+     */
+    void run() throws CompileException {
+
+        // load the variables from the environment
+        String[] variables = bytecode.variables;
+        for (int slot = 0; slot < variables.length; ++slot) {
+            Object value = grammar.lookup(variables[slot]);
+            if (value instanceof Double)
+                slotNumbers[slot] = (Double) value;
+            else
+                slotReferences[slot] = value;
+        }
+
+        try {
+            execute();
+        } finally {
+            // store the assigned variables back, even if the program stopped with an error
+            for (int slot = 0; slot < variables.length; ++slot)
+                if (assigned[slot])
+                    grammar.define(variables[slot], box(slotNumbers[slot], slotReferences[slot]));
+        }
+    }
+
+    private void execute() throws CompileException {
+        int[] code = bytecode.code;
+        double[] numbers = this.numbers;
+        Object[] references = this.references;
+        boolean condition = false;
+        for (int pc = 0; pc < code.length; ++pc) {
+            switch (code[pc]) {
+                case NUMBER:
+                    numbers[sp] = bytecode.numbers[code[++pc]];
+                    references[sp++] = null;
+                    break;
+                case STRING:
+                    references[sp++] = bytecode.strings[code[++pc]];
+                    break;
+                case LOAD: {
+                    int slot = code[++pc];
+                    numbers[sp] = slotNumbers[slot];
+                    references[sp++] = slotReferences[slot];
+                    break;
+                }
+                case ADD:
+                    if (bothNumbers())
+                        numbers[--sp - 1] += numbers[sp];
+                    else
+                        binary(grammar.add(peek(1), peek(0)));
+                    break;
+                case SUBTRACT:
+                    if (bothNumbers())
+                        numbers[--sp - 1] += numbers[sp];
+                    else
+                        binary(grammar.subtract(peek(1), peek(0)));
+                    break;
+                case MODULO:
+                    if (bothNumbers())
+                        numbers[--sp - 1] %= numbers[sp];
+                    else
+                        binary(grammar.modulo(peek(1), peek(0)));
+                    break;
+                case MULTIPLY:
+                    if (bothNumbers())
+                        numbers[--sp - 1] *= numbers[sp];
+                    else
+                        binary(grammar.multiply(peek(1), peek(0)));
+                    break;
+                case POWER:
+                    if (bothNumbers()) {
+                        --sp;
+                        numbers[sp - 1] = Math.pow(numbers[sp - 1], numbers[sp]);
+                    } else {
+                        binary(grammar.power(peek(1), peek(0)));
+                    }
+                    break;
+                case INVERT:
+                    if (references[sp - 1] == null)
+                        numbers[sp - 1] = 1.0 / numbers[sp - 1];
+                    else
+                        unary(grammar.invert(references[sp - 1]));
+                    break;
+                case NEGATE:
+                    if (references[sp - 1] == null)
+                        numbers[sp - 1] = - numbers[sp - 1];
+                    else
+                        unary(grammar.negate(references[sp - 1]));
+                    break;
+                case SQRT:
+                    if (references[sp - 1] == null) {
+                        double val = numbers[sp - 1];
+                        numbers[sp - 1] = val < 0 ? 0.0 : Math.sqrt(val);
+                    } else {
+                        unary(grammar.squareRoot(references[sp - 1]));
+                    }
+                    break;
+                case EQUALS:
+                    condition = grammar.onCondition(bothNumbers()
+                        ? Double.doubleToLongBits(numbers[sp - 2])
+                            == Double.doubleToLongBits(numbers[sp - 1])
+                        : compare(TokenType.EQUALS));
+                    sp -= 2;
+                    break;
+                case NOT_EQUALS:
+                    condition = grammar.onCondition(bothNumbers()
+                        ? Double.doubleToLongBits(numbers[sp - 2])
+                            != Double.doubleToLongBits(numbers[sp - 1])
+                        : compare(TokenType.NOT_EQUALS));
+                    sp -= 2;
+                    break;
+                case LESS_THAN:
+                    condition = grammar.onCondition(bothNumbers()
+                        ? numbers[sp - 2] < numbers[sp - 1]
+                        : compare(TokenType.LESS_THAN));
+                    sp -= 2;
+                    break;
+                case LESS_THAN_OR_EQUALS:
+                    condition = grammar.onCondition(bothNumbers()
+                        ? numbers[sp - 2] <= numbers[sp - 1]
+                        : compare(TokenType.LESS_THAN_OR_EQUALS));
+                    sp -= 2;
+                    break;
+                case GREATER_THAN:
+                    condition = grammar.onCondition(bothNumbers()
+                        ? numbers[sp - 2] > numbers[sp - 1]
+                        : compare(TokenType.GREATER_THAN));
+                    sp -= 2;
+                    break;
+                case GREATER_THAN_OR_EQUALS:
+                    condition = grammar.onCondition(bothNumbers()
+                        ? numbers[sp - 2] >= numbers[sp - 1]
+                        : compare(TokenType.GREATER_THAN_OR_EQUALS));
+                    sp -= 2;
+                    break;
+                case TRUE:
+                    condition = grammar.onCondition(true);
+                    break;
+                case FALSE:
+                    condition = grammar.onCondition(false);
+                    break;
+                case KEEP: {
+                    int temporary = code[++pc];
+                    temporaryNumbers[temporary] = numbers[sp - 1];
+                    temporaryReferences[temporary] = references[sp - 1];
+                    break;
+                }
+                case REUSE: {
+                    int temporary = code[++pc];
+                    numbers[sp] = temporaryNumbers[temporary];
+                    references[sp++] = temporaryReferences[temporary];
+                    break;
+                }
+                case SKIP: {
+                    int length = code[++pc];
+                    if (!condition)
+                        pc += length;
+                    break;
+                }
+                case STATEMENT:
+                    grammar.onStatement();
+                    break;
+                case PRINT:
+                    --sp;
+                    grammar.print(box(numbers[sp], references[sp]));
+                    break;
+                case ASSIGN: {
+                    int slot = code[++pc];
+                    --sp;
+                    Object value = box(numbers[sp], references[sp]);
+                    slotNumbers[slot] = numbers[sp];
+                    slotReferences[slot] = references[sp];
+                    assigned[slot] = true;
+                    grammar.onAssignment(bytecode.variables[slot], value);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("invalid opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+
+    private boolean bothNumbers() {
+        return references[sp - 1] == null && references[sp - 2] == null;
+    }
+
+    /**
+     * Boxes the value at a depth from the top of the stack, without popping it.
+     */
+    private Object peek(int depth) {
+        int index = sp - 1 - depth;
+        return box(numbers[index], references[index]);
+    }
+
+    /**
+     * Replaces the two values on top of the stack with the result of a binary operator.
+     */
+    private void binary(Object result) {
+        --sp;
+        unary(result);
+    }
+
+    /**
+     * Replaces the value on top of the stack with the result of an operator.
+     */
+    private void unary(Object result) {
+        if (result instanceof Double) {
+            numbers[sp - 1] = (Double) result;
+            references[sp - 1] = null;
+        } else {
+            references[sp - 1] = result;
+        }
+    }
+
+    private boolean compare(TokenType operator) {
+        return grammar.compare(operator, peek(1), peek(0));
+    }
+
+    private static Object box(double number, Object reference) {
+        return reference != null ? reference : (Object) number;
+    }
+
+}
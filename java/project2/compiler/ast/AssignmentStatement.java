@@ -0,0 +1,24 @@
+package project2.compiler.ast;
+
+import project2.compiler.CompileException;
+
+/**
+ * An assignment statement, the grammar symbol A.
+ * A -> IDENT = E
+ */
+public final class AssignmentStatement extends Statement {
+
+    public final String identifier;
+    public final Expression value;
+
+    public AssignmentStatement(String identifier, Expression value) {
+        this.identifier = identifier;
+        this.value = value;
+    }
+
+    @Override
+    public <T> T accept(Visitor<T> visitor) throws CompileException {
+        return visitor.visitAssignment(this);
+    }
+
+}
@@ -0,0 +1,252 @@
+package project2.compiler.ast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import project1.enums.Token;
+import project1.enums.TokenType;
+import project1.handlers.Tokenizer;
+import project2.compiler.CompileException;
+import project2.compiler.ExpressionParser;
+
+/**
+ * An LL1 parser that builds the syntax tree of a program, with the same grammar as
+ * CompilerGrammar but without evaluating anything. Parsing stops at the first error.
+ * Grammar rules:
+ * S -> EOF | R;S
+ * R -> PRINT(E) | IF(B) PRINT(E) | IF(B) A | A
+ * B -> E <= E | E >= E | E < E | E > E | E == E | E != E
+ * A -> IDENT = E
+ * E -> M | M + E | M - E
+ * M -> F | F % M
+ * F -> G | G * F | G / F
+ * G -> U | /U
+ * U -> X | -X
+ * X -> P | P ** X
+ * P -> D | (E)
+ * D -> IDENT | NUMBER | STRING | SQRT(E)
+ */
+public class AstParser {
+
+    private final Tokenizer tokenizer;
+    private Token token;
+
+    // the operand stack of E(), whose operators are parsed by the grammar's operator engine
+    private final ExpressionParser expressions = new Expressions();
+    private Expression[] operands = new Expression[16];
+    private int operandCount = 0;
+
+    /**
+     * Creates a parser that reads tokens from a tokenizer.
+     * @param tokenizer the tokenizer of the program, without comments
+     */
+    public AstParser(Tokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
+    /**
+     * Parses the whole program.
+     * @return the parsed program
+     * @throws CompileException at the first lexical or syntax error
+     */
+    public Program parse() throws CompileException {
+        consumeNextToken();
+        return S();
+    }
+
+    private void consumeNextToken() throws CompileException {
+        token = tokenizer.nextToken();
+        if (token.getTokenType() == TokenType.ERROR)
+            throw error("lexical error: invalid token " + token.getLexeme());
+    }
+
+    /**
+     * Creates the exception for an error at the current token.
+     * @param message the error message
+     * @return the exception to throw
+     */
+    private CompileException error(String message) {
+        return new CompileException(message, tokenizer.getTokenPosition());
+    }
+
+    private boolean expect(TokenType tokenType) throws CompileException {
+        return expect(tokenType, true);
+    }
+
+    private boolean expect(TokenType tokenType, boolean consume) throws CompileException {
+        if (token.getTokenType() == tokenType) {
+            if (consume)
+                consumeNextToken();
+            return true;
+        }
+        return false;
+    }
+
+    private Expression expectWrappedExpression(String errorLabel1,
+                                               String errorLabel2,
+                                               String lexemeBefore) throws CompileException {
+        if (!expect(TokenType.LPAREN))
+            throw error(errorLabel1 + ": expected left parenthesis"
+                + (lexemeBefore != null ? " after " + lexemeBefore : ""));
+        Expression result = E();
+        if (!expect(TokenType.RPAREN))
+            throw error(errorLabel2 + ": expected right parenthesis"
+                + (lexemeBefore != null ? " after " + lexemeBefore + "(<expression>" : ""));
+        return result;
+    }
+
+    // S -> EOF | R;S
+    private Program S() throws CompileException {
+        List<Statement> statements = new ArrayList<>();
+        while (!expect(TokenType.EOF)) {
+            statements.add(R());
+            if (!expect(TokenType.SEMICOLON))
+                throw error("S: invalid statement or missing semicolon");
+        }
+        return new Program(statements);
+    }
+
+    // R -> PRINT(E) | IF(B) PRINT(E) | IF(B) A | A
+    private Statement R() throws CompileException {
+        if (expect(TokenType.PRINT))
+            return new PrintStatement(expectWrappedExpression("R1", "R2", "PRINT"));
+        if (expect(TokenType.IF)) {
+            if (!expect(TokenType.LPAREN))
+                throw error("R3: expected left parenthesis after IF");
+            Condition condition = B();
+            if (!expect(TokenType.RPAREN))
+                throw error("R4: expected right parenthesis in IF");
+            if (expect(TokenType.PRINT))
+                return new IfStatement(condition, new PrintStatement(
+                    expectWrappedExpression("R5", "R6", "PRINT")));
+            return new IfStatement(condition, A());
+        }
+        return A();
+    }
+
+    // B -> E <= E | E >= E | E < E | E > E | E == E | E != E
+    private Condition B() throws CompileException {
+        Expression lhs = E();
+        TokenType operator = token.getTokenType();
+        switch (operator) {
+            case EQUALS:
+            case NOT_EQUALS:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUALS:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUALS:
+                break;
+            default:
+                throw error("B: expected a relational operator");
+        }
+        consumeNextToken();
+        return new Condition(operator, lhs, E());
+    }
+
+    // A -> IDENT = E
+    private AssignmentStatement A() throws CompileException {
+        if (!expect(TokenType.IDENT, false))
+            throw error(
+                "M1: expected an identifier as left value of an assignment statement");
+        String identifier = token.getLexeme();
+        consumeNextToken();
+        if (!expect(TokenType.ASSIGNMENT))
+            throw error("M2: expected an equal sign after variable during assignment");
+        return new AssignmentStatement(identifier, E());
+    }
+
+    /**
+     * Parses an expression with ExpressionParser, the operator engine of CompilerGrammar.E(), so
+     * that the tree is built from the same operators, in the same order, and with the same errors
+     * as the grammar evaluates them. The operators are right-associative like the grammar, so the tree is
+     * right-nested like the grammar symbols would build it.
+     */
+    private Expression E() throws CompileException {
+        int operandBase = operandCount;
+        try {
+            expressions.parse(ExpressionParser.SYMBOL_E);
+            return operands[operandCount - 1];
+        } finally {
+            while (operandCount > operandBase)
+                operands[--operandCount] = null;
+        }
+    }
+
+    // D -> IDENT | NUMBER | STRING, SQRT(E) is parsed by E()
+    private Expression D() throws CompileException {
+        Token token = this.token;
+        switch (token.getTokenType()) {
+            case IDENT:
+                consumeNextToken();
+                return new Variable(token.getLexeme());
+            case NUMBER:
+                consumeNextToken();
+                return new Literal(Double.parseDouble(token.getLexeme()));
+            case STRING:
+                consumeNextToken();
+                return new Literal(token.getLexeme().substring(1, token.getLexeme().length() - 1));
+            default:
+                throw error("D4: expected variable or literal");
+        }
+    }
+
+    /**
+     * The expressions of the program, built as nodes on the operand stack. The parser stops at
+     * the first error.
+     */
+    private class Expressions extends ExpressionParser {
+
+        private final TokenType[] operatorTokens = {
+            TokenType.PLUS, TokenType.MINUS, TokenType.MODULO, TokenType.MULT, TokenType.DIVIDE,
+            TokenType.MINUS, TokenType.EXP, null, TokenType.SQRT
+        };
+
+        @Override
+        protected TokenType tokenType() {
+            return token.getTokenType();
+        }
+
+        @Override
+        protected boolean expect(TokenType tokenType) throws CompileException {
+            return AstParser.this.expect(tokenType);
+        }
+
+        @Override
+        protected void consumeNextToken() throws CompileException {
+            AstParser.this.consumeNextToken();
+        }
+
+        @Override
+        protected void onError(String message) throws CompileException {
+            throw error(message);
+        }
+
+        @Override
+        protected void parseOperand() throws CompileException {
+            pushOperand(D());
+        }
+
+        @Override
+        protected void apply(int operator) {
+            int top = operandCount - 1;
+            if (operator == OPERATOR_INVERT || operator == OPERATOR_NEGATE
+                || operator == OPEN_SQRT) {
+                operands[top] = new UnaryExpression(operatorTokens[operator], operands[top]);
+                return;
+            }
+            Expression right = operands[top];
+            operands[top] = null;
+            operandCount = top;
+            operands[top - 1] =
+                new BinaryExpression(operatorTokens[operator], operands[top - 1], right);
+        }
+    }
+
+    private void pushOperand(Expression operand) {
+        if (operandCount == operands.length)
+            operands = Arrays.copyOf(operands, operandCount * 2);
+        operands[operandCount++] = operand;
+    }
+
+}
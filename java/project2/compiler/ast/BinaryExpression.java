@@ -0,0 +1,33 @@
+package project2.compiler.ast;
+
+import project1.enums.TokenType;
+import project2.compiler.CompileException;
+
+/**
+ * A binary expression of the grammar symbols E, M, F or X. The grammar is right recursive, so the
+ * right operand holds the rest of the expression. The MINUS and DIVIDE tokens are left for the
+ * right operand, which starts with a negation or an inversion: MINUS adds its operands, and
+ * division is a MULT.
+ * E -> M + E | M - E     (operator PLUS or MINUS)
+ * M -> F % M             (operator MODULO)
+ * F -> G * F | G / F     (operator MULT)
+ * X -> P ** X            (operator EXP)
+ */
+public final class BinaryExpression extends Expression {
+
+    public final TokenType operator;
+    public final Expression left;
+    public final Expression right;
+
+    public BinaryExpression(TokenType operator, Expression left, Expression right) {
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    public <T> T accept(Visitor<T> visitor) throws CompileException {
+        return visitor.visitBinary(this);
+    }
+
+}
@@ -0,0 +1,62 @@
+package project2.compiler.ast;
+
+import project1.enums.TokenType;
+import project2.compiler.CompileException;
+
+/**
+ * A relational expression, the grammar symbol B. Conditions whose result is known before the
+ * program runs, e.g. after constant folding, are the constants TRUE and FALSE, which have no
+ * operator and no operands.
+ * B -> E <= E | E >= E | E < E | E > E | E == E | E != E
+ */
+public final class Condition extends Node {
+
+    public static final Condition TRUE = new Condition(true);
+    public static final Condition FALSE = new Condition(false);
+
+    public final TokenType operator;
+    public final Expression lhs;
+    public final Expression rhs;
+
+    /**
+     * The result of a constant condition, false for the others.
+     */
+    public final boolean value;
+
+    public Condition(TokenType operator, Expression lhs, Expression rhs) {
+        this.operator = operator;
+        this.lhs = lhs;
+        this.rhs = rhs;
+        this.value = false;
+    }
+
+    private Condition(boolean value) {
+        this.operator = null;
+        this.lhs = null;
+        this.rhs = null;
+        this.value = value;
+    }
+
+    /**
+     * Gets the constant condition with a given result.
+     * @param value the result of the condition
+     * @return TRUE or FALSE
+     */
+    public static Condition of(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    /**
+     * Checks if this condition is TRUE or FALSE.
+     * @return true if the result of this condition is known before the program runs
+     */
+    public boolean isConstant() {
+        return operator == null;
+    }
+
+    @Override
+    public <T> T accept(Visitor<T> visitor) throws CompileException {
+        return visitor.visitCondition(this);
+    }
+
+}
@@ -0,0 +1,7 @@
+package project2.compiler.ast;
+
+/**
+ * An expression, any of the grammar symbols E, M, F, G, U, X, P or D.
+ */
+public abstract class Expression extends Node {
+}
@@ -0,0 +1,115 @@
+package project2.compiler.ast;
+
+import java.util.Arrays;
+
+/**
+ * Walks the nodes of an expression depth first, left to right, without recursion, so that
+ * expressions nested any number of levels deep, like the long right-nested chains that the
+ * grammar builds for its operators, take no Java stack. Every node is entered before its operands
+ * and left after them; the operands of the node being entered can be skipped. A walker keeps its
+ * stack for the next expressions, so it walks one expression at a time.
+ * Typical use, to visit the nodes bottom up:
+ *   walker.start(expression);
+ *   while (walker.next())
+ *       if (!walker.isEntering())
+ *           walker.node().accept(visitor);
+ */
+public final class ExpressionWalker {
+
+    // what is left to do for a node on the stack
+    private static final int NEW = 0;
+    private static final int ENTERED = 1;
+    private static final int EXPANDED = 2;
+
+    private Expression[] nodes = new Expression[16];
+    private int[] states = new int[16];
+    private int size = 0;
+
+    private Expression node = null;
+    private boolean entering = false;
+
+    /**
+     * Starts walking an expression, dropping what is left of the previous walk.
+     * @param expression the expression to walk
+     */
+    public void start(Expression expression) {
+        while (size > 0)
+            nodes[--size] = null;
+        push(expression);
+    }
+
+    /**
+     * Moves to the next node, which is either entered or left.
+     * @return false once the expression was walked
+     */
+    public boolean next() {
+        while (size > 0) {
+            int top = size - 1;
+            switch (states[top]) {
+                case NEW:
+                    states[top] = ENTERED;
+                    node = nodes[top];
+                    entering = true;
+                    return true;
+                case ENTERED:
+                    states[top] = EXPANDED;
+                    pushOperands(nodes[top]);
+                    break;
+                default:
+                    node = nodes[top];
+                    nodes[--size] = null;
+                    entering = false;
+                    return true;
+            }
+        }
+        node = null;
+        return false;
+    }
+
+    /**
+     * Getter for the current node.
+     * @return the node entered or left last
+     */
+    public Expression node() {
+        return node;
+    }
+
+    /**
+     * Checks if the current node is entered, before its operands are walked.
+     * @return true if the node is entered, false if it is left
+     */
+    public boolean isEntering() {
+        return entering;
+    }
+
+    /**
+     * Skips the operands of the node being entered, which is left next.
+     */
+    public void skip() {
+        if (!entering)
+            throw new IllegalStateException("only the operands of an entered node can be skipped");
+        states[size - 1] = EXPANDED;
+    }
+
+    private void pushOperands(Expression expression) {
+        // the last operand pushed is walked first
+        if (expression instanceof BinaryExpression) {
+            push(((BinaryExpression) expression).right);
+            push(((BinaryExpression) expression).left);
+        } else if (expression instanceof UnaryExpression) {
+            push(((UnaryExpression) expression).operand);
+        } else if (expression instanceof Temporary && ((Temporary) expression).value != null) {
+            push(((Temporary) expression).value);
+        }
+    }
+
+    private void push(Expression expression) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            states = Arrays.copyOf(states, size * 2);
+        }
+        nodes[size] = expression;
+        states[size++] = NEW;
+    }
+
+}
@@ -0,0 +1,25 @@
+package project2.compiler.ast;
+
+import project2.compiler.CompileException;
+
+/**
+ * An IF statement, whose body is either a PrintStatement or an AssignmentStatement. The body is
+ * skipped if the condition is not met.
+ * R -> IF(B) PRINT(E) | IF(B) A
+ */
+public final class IfStatement extends Statement {
+
+    public final Condition condition;
+    public final Statement body;
+
+    public IfStatement(Condition condition, Statement body) {
+        this.condition = condition;
+        this.body = body;
+    }
+
+    @Override
+    public <T> T accept(Visitor<T> visitor) throws CompileException {
+        return visitor.visitIf(this);
+    }
+
+}
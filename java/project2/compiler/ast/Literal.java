@@ -0,0 +1,23 @@
+package project2.compiler.ast;
+
+import project2.compiler.CompileException;
+
+/**
+ * A NUMBER or STRING literal of the grammar symbol D, with its value already parsed: a Double,
+ * or a String without its quotes.
+ * D -> NUMBER | STRING
+ */
+public final class Literal extends Expression {
+
+    public final Object value;
+
+    public Literal(Object value) {
+        this.value = value;
+    }
+
+    @Override
+    public <T> T accept(Visitor<T> visitor) throws CompileException {
+        return visitor.visitLiteral(this);
+    }
+
+}
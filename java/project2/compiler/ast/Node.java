@@ -0,0 +1,19 @@
+package project2.compiler.ast;
+
+import project2.compiler.CompileException;
+
+/**
+ * A node of the syntax tree of a parsed program. Nodes are immutable, so a parsed program can be
+ * run any number of times, from any number of threads.
+ */
+public abstract class Node {
+
+    /**
+     * Calls the visitor method for the type of this node.
+     * @param visitor the visitor to call
+     * @param <T> the type returned by the visitor
+     * @return the value returned by the visitor
+     */
+    public abstract <T> T accept(Visitor<T> visitor) throws CompileException;
+
+}
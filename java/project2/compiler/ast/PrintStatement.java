@@ -0,0 +1,22 @@
+package project2.compiler.ast;
+
+import project2.compiler.CompileException;
+
+/**
+ * A PRINT statement.
+ * R -> PRINT(E)
+ */
+public final class PrintStatement extends Statement {
+
+    public final Expression expression;
+
+    public PrintStatement(Expression expression) {
+        this.expression = expression;
+    }
+
+    @Override
+    public <T> T accept(Visitor<T> visitor) throws CompileException {
+        return visitor.visitPrint(this);
+    }
+
+}
@@ -0,0 +1,28 @@
+package project2.compiler.ast;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parsed program, the statements of the grammar symbol S.
+ * S -> EOF | R;S
+ */
+public final class Program {
+
+    public final List<Statement> statements;
+
+    /**
+     * The number of temporaries used by the statements, 0 for parsed programs.
+     */
+    public final int temporaries;
+
+    public Program(List<Statement> statements) {
+        this(statements, 0);
+    }
+
+    public Program(List<Statement> statements, int temporaries) {
+        this.statements = Collections.unmodifiableList(statements);
+        this.temporaries = temporaries;
+    }
+
+}
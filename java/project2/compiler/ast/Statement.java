@@ -0,0 +1,8 @@
+package project2.compiler.ast;
+
+/**
+ * A statement, the grammar symbol R.
+ * R -> PRINT(E) | IF(B) PRINT(E) | IF(B) A | A
+ */
+public abstract class Statement extends Node {
+}
@@ -0,0 +1,30 @@
+package project2.compiler.ast;
+
+import project2.compiler.CompileException;
+
+/**
+ * A value computed once and reused, created by the Optimizer for subexpressions that appear more
+ * than once. The first occurrence evaluates the expression and keeps its value in the temporary,
+ * the next ones read it back. Temporaries are numbered from 0 in each program and are not bound
+ * in the environment.
+ */
+public final class Temporary extends Expression {
+
+    public final int index;
+
+    /**
+     * The expression whose value is kept in the temporary, null to read the kept value.
+     */
+    public final Expression value;
+
+    public Temporary(int index, Expression value) {
+        this.index = index;
+        this.value = value;
+    }
+
+    @Override
+    public <T> T accept(Visitor<T> visitor) throws CompileException {
+        return visitor.visitTemporary(this);
+    }
+
+}
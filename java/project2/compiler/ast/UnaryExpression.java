@@ -0,0 +1,27 @@
+package project2.compiler.ast;
+
+import project1.enums.TokenType;
+import project2.compiler.CompileException;
+
+/**
+ * A unary expression of the grammar symbols G, U or D.
+ * G -> /U        (operator DIVIDE)
+ * U -> -X        (operator MINUS)
+ * D -> SQRT(E)   (operator SQRT)
+ */
+public final class UnaryExpression extends Expression {
+
+    public final TokenType operator;
+    public final Expression operand;
+
+    public UnaryExpression(TokenType operator, Expression operand) {
+        this.operator = operator;
+        this.operand = operand;
+    }
+
+    @Override
+    public <T> T accept(Visitor<T> visitor) throws CompileException {
+        return visitor.visitUnary(this);
+    }
+
+}
@@ -0,0 +1,22 @@
+package project2.compiler.ast;
+
+import project2.compiler.CompileException;
+
+/**
+ * A variable of the grammar symbol D. Variables that are not bound have the value 0.
+ * D -> IDENT
+ */
+public final class Variable extends Expression {
+
+    public final String identifier;
+
+    public Variable(String identifier) {
+        this.identifier = identifier;
+    }
+
+    @Override
+    public <T> T accept(Visitor<T> visitor) throws CompileException {
+        return visitor.visitVariable(this);
+    }
+
+}
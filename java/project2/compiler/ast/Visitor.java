@@ -0,0 +1,29 @@
+package project2.compiler.ast;
+
+import project2.compiler.CompileException;
+
+/**
+ * A visitor of syntax tree nodes, with one method per type of node.
+ * @param <T> the type returned by the visitor
+ */
+public interface Visitor<T> {
+
+    T visitPrint(PrintStatement node) throws CompileException;
+
+    T visitAssignment(AssignmentStatement node) throws CompileException;
+
+    T visitIf(IfStatement node) throws CompileException;
+
+    T visitCondition(Condition node) throws CompileException;
+
+    T visitBinary(BinaryExpression node) throws CompileException;
+
+    T visitUnary(UnaryExpression node) throws CompileException;
+
+    T visitLiteral(Literal node) throws CompileException;
+
+    T visitVariable(Variable node) throws CompileException;
+
+    T visitTemporary(Temporary node) throws CompileException;
+
+}
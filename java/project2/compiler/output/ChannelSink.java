@@ -0,0 +1,77 @@
+package project2.compiler.output;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An output sink that encodes every message as UTF-8 into a direct buffer, and writes the buffer
+ * to a channel whenever it is full. Messages are written as they are, without separators.
+ */
+public class ChannelSink implements OutputSink {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Creates a sink that writes to a channel.
+     * @param channel the channel to write the messages to
+     */
+    public ChannelSink(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void print(Object message) {
+        CharBuffer chars = CharBuffer.wrap(String.valueOf(message));
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow())
+            drain();
+        while (encoder.flush(buffer).isOverflow())
+            drain();
+    }
+
+    @Override
+    public void flush() {
+        drain();
+    }
+
+    @Override
+    public void close() {
+        try {
+            drain();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the whole buffer to the channel.
+     */
+    private void drain() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package project2.compiler.output;
+
+import project2.compiler.CompilerGrammar;
+
+/**
+ * An output sink that collects all messages in memory, appending each one in amortized constant
+ * time.
+ */
+public class CollectorSink implements OutputSink {
+
+    private final StringBuilder text = new StringBuilder();
+
+    @Override
+    public void print(Object message) {
+        text.append(message);
+    }
+
+    /**
+     * Getter for the collected output.
+     * @return all messages printed so far, concatenated
+     */
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * Binds the collected output to the String variable named "PRINT" of a grammar, like the
+     * PrintVariableSink does once a program has run, for code that reads the output from there.
+     * @param grammar the grammar whose environment gets the variable
+     */
+    public void definePrintVariable(CompilerGrammar grammar) {
+        grammar.define("PRINT", getText());
+    }
+
+    /**
+     * Drops the collected output.
+     */
+    public void clear() {
+        text.setLength(0);
+    }
+
+}
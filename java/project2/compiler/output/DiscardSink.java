@@ -0,0 +1,17 @@
+package project2.compiler.output;
+
+/**
+ * An output sink that drops every message, for when only the effects of a program matter.
+ */
+public final class DiscardSink implements OutputSink {
+
+    public static final DiscardSink INSTANCE = new DiscardSink();
+
+    private DiscardSink() {
+    }
+
+    @Override
+    public void print(Object message) {
+    }
+
+}
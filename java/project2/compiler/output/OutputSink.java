@@ -0,0 +1,34 @@
+package project2.compiler.output;
+
+import java.io.Closeable;
+import java.io.Flushable;
+
+/**
+ * Where the messages of PRINT statements go. CompilerGrammar.print() hands every message to the
+ * output sink of the grammar, which can be set with CompilerGrammar.setOutputSink(). Sinks report
+ * I/O errors as UncheckedIOExceptions, since print() throws no checked exceptions.
+ */
+public interface OutputSink extends Flushable, Closeable {
+
+    /**
+     * Outputs the message of a PRINT statement.
+     * @param message the message to output, a Double or a String
+     */
+    void print(Object message);
+
+    /**
+     * Writes out any buffered messages. Does nothing by default.
+     */
+    @Override
+    default void flush() {
+    }
+
+    /**
+     * Flushes the sink and releases what it writes to. Flushes by default.
+     */
+    @Override
+    default void close() {
+        flush();
+    }
+
+}
@@ -0,0 +1,45 @@
+package project2.compiler.output;
+
+import project2.compiler.CompilerGrammar;
+
+/**
+ * An output sink that appends the messages to the String variable named "PRINT" in the
+ * environment of a grammar, the way CompilerGrammar has always printed. The messages are
+ * collected in a StringBuilder and appended to the variable with a single binding when the sink
+ * is flushed, which the grammar does once the program has run, so printing does not copy the
+ * whole output every time.
+ */
+public class PrintVariableSink implements OutputSink {
+
+    private final CompilerGrammar grammar;
+    private final StringBuilder text = new StringBuilder();
+    private boolean printed = false;
+
+    /**
+     * Creates a sink that prints to the environment of a grammar.
+     * @param grammar the grammar whose environment gets the variable
+     */
+    public PrintVariableSink(CompilerGrammar grammar) {
+        this.grammar = grammar;
+    }
+
+    @Override
+    public void print(Object message) {
+        text.append(message);
+        printed = true;
+    }
+
+    /**
+     * Appends the messages printed since the last flush to the variable.
+     */
+    @Override
+    public void flush() {
+        if (!printed)
+            return;
+        Object print = grammar.getEnvironment().getValue("PRINT");
+        grammar.define("PRINT", print == null ? text.toString() : (String) print + text);
+        text.setLength(0);
+        printed = false;
+    }
+
+}
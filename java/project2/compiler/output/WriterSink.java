@@ -0,0 +1,51 @@
+package project2.compiler.output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * An output sink that writes every message to a Writer, buffered. Messages are written as they
+ * are, without separators, like they are appended to the "PRINT" variable.
+ */
+public class WriterSink implements OutputSink {
+
+    private final Writer out;
+
+    /**
+     * Creates a sink that writes to a Writer, which is buffered unless it is a BufferedWriter.
+     * @param out the writer to write the messages to
+     */
+    public WriterSink(Writer out) {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out);
+    }
+
+    @Override
+    public void print(Object message) {
+        try {
+            out.write(String.valueOf(message));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}